@@ -1,46 +1,77 @@
 import java.awt.event.ActionEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.AbstractAction;
 import javax.swing.ActionMap;
 import javax.swing.InputMap;
 import javax.swing.JComponent;
+import javax.swing.JOptionPane;
 import javax.swing.KeyStroke;
-import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
+import bench.Bench;
+import engine.Engine;
+import engine.TemporalBlocking;
 import frame.Frame;
 import gamePanel.GamePanel;
 import genDisplay.GenerationDisplay;
+import grid.Checkpoint;
 import grid.Grid;
+import hashlife.HashLife;
+import headless.Headless;
 import rleinput.RLEInput;
+import session.SessionFile;
+import simulation.Command;
+import simulation.Simulation;
+import simulation.Snapshot;
 import toolbar.Toolbar;
 import toolbarButton.ToolbarButton;
 
 public class Life {
     private static int APP_WIDTH = 1400;
 
-    private static ScheduledExecutorService evolutionExecutor;
-    private static AtomicBoolean autoEvolution = new AtomicBoolean(false);
-    private static Timer inputTimer;
+    private static Simulation simulation;
+    private static Timer renderTimer;
 
     private static GenerationDisplay genDisplay;
     private static Grid grid;
+    private static HashLife hashLife;
     private static GamePanel gamePanel;
     private static Frame frame;
     private static RLEInput rleInput;
-    private static HashMap<String, Boolean> keyWait;
+
+    /**
+     * shownGeneration is the generation of the grid on display
+     */
+    private static int shownGeneration = 0;
+
+    /**
+     * sessionFile is the session file last saved or loaded, and
+     * sessionWriter the thread session files are written on, so that saving
+     * does not hold up the simulation
+     */
+    private static String sessionFile = "life.session";
+    private static final ExecutorService sessionWriter = Executors
+            .newSingleThreadExecutor(task -> new Thread(task, "Session-Writer"));
 
     // Topbar tick controls
     private static ToolbarButton playPauseButton;
     private static ToolbarButton stepButton;
+    private static ToolbarButton stepBackButton;
+    private static ToolbarButton jumpButton;
     private static ToolbarButton clearButton;
     private static ToolbarButton quitButton;
     private static ToolbarButton wrapToggle;
+    private static ToolbarButton autoPauseToggle;
+    private static ToolbarButton saveButton;
+    private static ToolbarButton loadButton;
     private static ToolbarButton zoomInButton;
     private static ToolbarButton zoomOutButton;
     private static ToolbarButton panUpButton;
@@ -52,11 +83,12 @@ public class Life {
     private static ToolbarButton tick50xButton;
     private static ToolbarButton tick100xButton;
     private static ToolbarButton tick1000xButton;
+    private static ToolbarButton tickMaxButton;
 
     /**
      * tickMap determines the tick speed of autoevolution set by a key/button.
      * Tick speed is set in ms, so a value of 1000 == 1 second (i. e. bigger
-     * value is a longer interval).
+     * value is a longer interval). 0 evolves as fast as possible.
      */
     private static final HashMap<String, Integer> tickMap = new HashMap<String, Integer>() {
         {
@@ -65,45 +97,75 @@ public class Life {
             put("3", 20);
             put("4", 10);
             put("5", 1);
+            put("6", 0);
         }
     };
 
-    private static final int KEYPRESS_LISTENER_INTERVAL = 16;
+    /**
+     * RENDER_INTERVAL is the time in ms between two samples of the grid by
+     * the display, about 60 frames per second. Generations evolved in between
+     * are drawn together.
+     */
+    private static final int RENDER_INTERVAL = 16;
 
     /**
      * Initial evolution interval, can be updated by tick speed buttons
      */
-    private static volatile int evolutionInterval = 100;
+    private static final int INITIAL_EVOLUTION_INTERVAL = 100;
 
     public static void main(String[] args) {
+        // Run without any window, see Headless for the options
+        if (args.length > 0 && args[0].equals("--headless")) {
+            System.exit(Headless.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        // Run the benchmarks, see Bench for the options
+        if (args.length > 0 && args[0].equals("--bench")) {
+            System.exit(Bench.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
         // Attempt to get a custom grid height from the cli args
         int height = calcGridHeight(args);
 
+        // Attempt to get an engine name from the cli args
+        Engine engine = calcEngine(args);
+
         // A grid will have all the logic to enact the rules of Life
-        grid = new Grid(height);
+        grid = new Grid(height, engine);
+
+        // HashLife jumps the grid ahead to a generation
+        hashLife = new HashLife(calcHashLifeNodes(args));
+
+        // The simulation evolves the grid on its own thread once started
+        simulation = new Simulation(grid, INITIAL_EVOLUTION_INTERVAL);
 
         // Create game panel
-        gamePanel = new GamePanel(grid);
+        gamePanel = new GamePanel(grid, simulation);
 
         // Create toolbar action buttons
-        playPauseButton = new ToolbarButton("▶ Play", e -> keyWait.put("p", false));
-        stepButton = new ToolbarButton("⏭ Step", e -> keyWait.put("space", false));
-        clearButton = new ToolbarButton("⏹ Clear", e -> keyWait.put("escape", false));
-        quitButton = new ToolbarButton("✖ Quit", e -> keyWait.put("q", false));
-        wrapToggle = new ToolbarButton("Wrap (off)", e -> keyWait.put("w", false));
-
-        zoomOutButton = new ToolbarButton("⊖ ", e -> keyWait.put("page_down", false));
-        zoomInButton = new ToolbarButton("⊕ ", e -> keyWait.put("page_up", false));
-        panLeftButton = new ToolbarButton("← ", e -> keyWait.put("h", false));
-        panDownButton = new ToolbarButton("↓ ", e -> keyWait.put("j", false));
-        panUpButton = new ToolbarButton("↑ ", e -> keyWait.put("k", false));
-        panRightButton = new ToolbarButton("→ ", e -> keyWait.put("l", false));
-
-        tick1xButton = new ToolbarButton("1x", e -> keyWait.put("1", false));
-        tick10xButton = new ToolbarButton("10x", e -> keyWait.put("2", false));
-        tick50xButton = new ToolbarButton("50x", e -> keyWait.put("3", false));
-        tick100xButton = new ToolbarButton("100x", e -> keyWait.put("4", false));
-        tick1000xButton = new ToolbarButton("1000x", e -> keyWait.put("5", false));
+        playPauseButton = new ToolbarButton("▶ Play", e -> handleKey("p"));
+        stepButton = new ToolbarButton("⏭ Step", e -> handleKey("space"));
+        stepBackButton = new ToolbarButton("⏮ Back", e -> handleKey("b"));
+        jumpButton = new ToolbarButton("⏩ Jump", e -> handleKey("g"));
+        clearButton = new ToolbarButton("⏹ Clear", e -> handleKey("escape"));
+        quitButton = new ToolbarButton("✖ Quit", e -> handleKey("q"));
+        wrapToggle = new ToolbarButton("Wrap (off)", e -> handleKey("w"));
+        autoPauseToggle = new ToolbarButton("Auto-pause (off)", e -> handleKey("a"));
+        saveButton = new ToolbarButton("Save", e -> handleKey("s"));
+        loadButton = new ToolbarButton("Load", e -> handleKey("o"));
+
+        zoomOutButton = new ToolbarButton("⊖ ", e -> handleKey("page_down"));
+        zoomInButton = new ToolbarButton("⊕ ", e -> handleKey("page_up"));
+        panLeftButton = new ToolbarButton("← ", e -> handleKey("h"));
+        panDownButton = new ToolbarButton("↓ ", e -> handleKey("j"));
+        panUpButton = new ToolbarButton("↑ ", e -> handleKey("k"));
+        panRightButton = new ToolbarButton("→ ", e -> handleKey("l"));
+
+        tick1xButton = new ToolbarButton("1x", e -> handleKey("1"));
+        tick10xButton = new ToolbarButton("10x", e -> handleKey("2"));
+        tick50xButton = new ToolbarButton("50x", e -> handleKey("3"));
+        tick100xButton = new ToolbarButton("100x", e -> handleKey("4"));
+        tick1000xButton = new ToolbarButton("1000x", e -> handleKey("5"));
+        tickMaxButton = new ToolbarButton("Max", e -> handleKey("6"));
 
         // Create generation display box
         genDisplay = new GenerationDisplay();
@@ -113,10 +175,15 @@ public class Life {
                 // playControl toolbar
                 new ToolbarButton[] {
                         playPauseButton,
+                        stepBackButton,
                         stepButton,
+                        jumpButton,
                         clearButton,
                         quitButton,
                         wrapToggle,
+                        autoPauseToggle,
+                        saveButton,
+                        loadButton,
                 },
                 // viewport toolbar
                 new ToolbarButton[] {
@@ -134,25 +201,30 @@ public class Life {
                         tick50xButton,
                         tick100xButton,
                         tick1000xButton,
+                        tickMaxButton,
                 },
                 genDisplay);
 
         // Create RLE input
-        rleInput = new RLEInput(grid);
+        rleInput = new RLEInput(grid, simulation);
 
         // frame is the main point of interaction for the app
         frame = new Frame("Java Game of Life", APP_WIDTH, gamePanel, toolBar, rleInput);
 
         // Set keybindings to interact with the app
-        keyWait = new HashMap<String, Boolean>();
         setupKeyBindings(
                 new String[] {
                         "escape", // Clears the grid
                         "space", // Evolves cells by a single generation / pauses auto
+                        "b", // Steps back a generation / pauses auto
+                        "g", // jump to a generation
                         "p", // toggle autoevolution
                         "q", // quit the app
                         "w", // toggle wrap-around (e.g. when glider goes oob)
-                        "1", "2", "3", "4", "5", // Set evo tick speed
+                        "a", // toggle pausing once the grid settles into a period
+                        "s", // save the session
+                        "o", // load a saved session
+                        "1", "2", "3", "4", "5", "6", // Set evo tick speed
                         "page_up", // zoom in
                         "page_down", // zoom out
                         "h", // pan left
@@ -161,9 +233,9 @@ public class Life {
                         "l", // pan right
                 });
 
-        // Start both event loops
-        startInputLoop();
+        // Start the event loops
         startEvolutionLoop();
+        startRenderLoop();
     }
 
     /**
@@ -180,215 +252,286 @@ public class Life {
      * bindKey binds a key to an action
      */
     private static void bindKey(String key) {
-        // Set initial value in keyWait map to wait for keypress
-        keyWait.put(key, true);
         InputMap inputMap = frame.getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
         ActionMap actionMap = frame.getRootPane().getActionMap();
         inputMap.put(KeyStroke.getKeyStroke(String.format("pressed %s", key.toUpperCase())),
                 String.format("%sPressed", key));
         actionMap.put(String.format("%sPressed", key), new AbstractAction() {
-            // Signal to the loop we are no longer waiting for this key press
             @Override
             public void actionPerformed(ActionEvent e) {
+                // Keys typed into the rle input text box are not actions
+                if (rleInput.isFocusOwner()) {
+                    return;
+                }
                 System.out.printf("key pressed: %s\n", key);
-                keyWait.put(key, false);
+                handleKey(key);
             }
         });
     }
 
     /**
-     * toggleAutoEvolution starts or stops the evolution of cells and changes the
-     * display of some control buttons to reflect what actions those buttons
-     * perform based on the auto-evolution state.
+     * handleKey performs the action of a key or of its toolbar button. Actions
+     * on the grid are sent to the simulation as commands, so they take effect
+     * before the next generation; actions on the view are performed right
+     * away. Step, step back and clear pause autoevolution instead of
+     * performing their action while it runs, and jump and load pause it
+     * before prompting. Wrap, auto-pause, save, the speed keys and the view
+     * keys take effect without pausing.
      */
-    private static void toggleAutoEvolution() {
-        boolean newAutoEvolution = !autoEvolution.get();
-        autoEvolution.set(newAutoEvolution);
-        SwingUtilities.invokeLater(() -> clearButton.setText(newAutoEvolution ? "⏹ Stop" : "⏹ Clear"));
-        SwingUtilities.invokeLater(() -> playPauseButton.setText(newAutoEvolution ? "⏸ Pause" : "▶ Play"));
-    }
-
-    /**
-     * startInputLoop checks whether a key was pressed when a period
-     * elapses. Any key other than 'p' should pause autoevolution before or
-     * instead of performing its action.
-     */
-    private static void startInputLoop() {
-        inputTimer = new Timer(KEYPRESS_LISTENER_INTERVAL, e -> {
-
-            // If the rle input text box is focused, reset all key waits and
-            // do not perform any actions
-            if (rleInput.isFocusOwner()) {
-                keyWait.forEach((k, _v) -> {
-                    keyWait.put(k, true);
-                });
-                return;
-            }
-
-            // ----
-            // Check for key presses
-            // ----
-
+    private static void handleKey(String key) {
+        switch (key) {
             // 'q' action: quit the app
-            else if (!keyWait.get("q")) {
+            case "q":
                 System.out.println("Closing program");
                 cleanup();
                 System.exit(0);
-            }
-
-            else if (!keyWait.get("w")) {
-                boolean newWrap = !grid.isWrap();
-                grid.setWrap(newWrap);
-                System.out.printf("Toggle wrap to: %s\n", newWrap);
-                keyWait.put("w", true);
-                wrapToggle.setText(newWrap ? "Wrap (on)" : "Wrap (off)");
-            }
+                break;
+
+            case "w":
+                simulation.send(Command.wrap());
+                break;
+
+            // 'a' action: pause autoevolution once the grid is stable or
+            // oscillates, or stop doing so
+            case "a":
+                simulation.send(Command.autoPause());
+                break;
+
+            // Space action: stepwise generation tick, or pause autoevolution
+            // if on
+            case "space":
+                simulation.send(Command.step());
+                break;
+
+            // 'b' action: step back a generation, or pause autoevolution if
+            // on
+            case "b":
+                simulation.send(Command.stepBack());
+                break;
+
+            // 'g' action: jump to a generation
+            case "g":
+                simulation.send(Command.pause());
+                promptJump();
+                break;
+
+            // Escape action: clear the grid, or pause autoevolution if on
+            case "escape":
+                simulation.send(Command.clear());
+                break;
+
+            // 's' action: save the session without pausing
+            case "s":
+                promptSession("Save session to:").ifPresent(
+                        file -> simulation.send(Command.query("save session", () -> saveSession(file))));
+                break;
+
+            // 'o' action: load a saved session
+            case "o":
+                simulation.send(Command.pause());
+                promptSession("Load session from:").ifPresent(
+                        file -> simulation.send(Command.edit("load session", () -> loadSession(file))));
+                break;
 
-            // Space action: stepwise generation tick
-            else if (!keyWait.get("space")) {
-                if (!autoEvolution.get()) {
-                    evolveAndUpdate();
-                    System.out.printf("Evolving to generation %d\n", grid.getGeneration());
-                } else {
-                    // Pause autoevolution if on
-                    toggleAutoEvolution();
-                }
-                keyWait.put("space", true);
-            }
-
-            // Escape actions
-            else if (!keyWait.get("escape")) {
-                if (!autoEvolution.get()) {
-                    grid.clearGrid();
-                    SwingUtilities.invokeLater(() -> {
-                        genDisplay.setText("Gen: 0");
-                    });
-                } else {
-                    // Pause autoevolution if on
-                    toggleAutoEvolution();
-                }
-
-                keyWait.put("escape", true);
-            }
+            // 'p' action: toggle autoevolution
+            case "p":
+                simulation.send(Command.playPause());
+                break;
 
-            // 'page_up' action: zoom in
-            else if (!keyWait.get("page_up")) {
+            case "page_up":
                 gamePanel.zoomIn();
-                keyWait.put("page_up", true);
-            }
-
-            // 'page_down' action: zoom in
-            else if (!keyWait.get("page_down")) {
+                break;
+            case "page_down":
                 gamePanel.zoomOut();
-                keyWait.put("page_down", true);
-            }
-
-            // 'k' action: pan up
-            else if (!keyWait.get("k")) {
+                break;
+            case "k":
                 gamePanel.pan("up");
-                keyWait.put("k", true);
-            }
-
-            // 'j' action: pan down
-            else if (!keyWait.get("j")) {
+                break;
+            case "j":
                 gamePanel.pan("down");
-                keyWait.put("j", true);
-            }
-
-            // 'h' action: pan left
-            else if (!keyWait.get("h")) {
+                break;
+            case "h":
                 gamePanel.pan("left");
-                keyWait.put("h", true);
-            }
-
-            // 'l' action: pan right
-            else if (!keyWait.get("l")) {
+                break;
+            case "l":
                 gamePanel.pan("right");
-                keyWait.put("l", true);
-            }
+                break;
 
             // Tick speed keys
-            else if (!keyWait.get("1")) {
-                updateTickSpeed("1");
-            } else if (!keyWait.get("2")) {
-                updateTickSpeed("2");
-            } else if (!keyWait.get("3")) {
-                updateTickSpeed("3");
-            } else if (!keyWait.get("4")) {
-                updateTickSpeed("4");
-            } else if (!keyWait.get("5")) {
-                updateTickSpeed("5");
-            }
-
-            // 'p' action: toggle autoevolution
-            else if (!keyWait.get("p")) {
-                toggleAutoEvolution();
-                keyWait.put("p", true);
-            }
-        });
-        inputTimer.start();
+            case "1":
+            case "2":
+            case "3":
+            case "4":
+            case "5":
+            case "6":
+                updateTickSpeed(key);
+                break;
+        }
     }
 
     private static void updateTickSpeed(String key) {
-        evolutionInterval = (int) tickMap.get(key);
+        int interval = (int) tickMap.get(key);
+
+        if (interval > 0) {
+            System.out.printf("Setting tick speed to %dms\n", interval);
+        } else {
+            System.out.println("Setting tick speed to as fast as possible");
+        }
 
-        System.out.printf("Setting tick speed to %dms\n", evolutionInterval);
+        simulation.send(Command.speed(interval));
+    }
+
+    /**
+     * promptJump asks for a generation to jump to, then jumps to it on the
+     * evolution thread
+     */
+    private static void promptJump() {
+        String input = JOptionPane.showInputDialog(frame, "Jump to generation:", shownGeneration);
+        if (input == null) {
+            return;
+        }
+
+        int target;
+        try {
+            target = Integer.parseInt(input.trim());
+        } catch (NumberFormatException e) {
+            System.err.printf("Must provide an integer generation to jump to, got '%s'\n", input);
+            return;
+        }
 
-        if (evolutionExecutor != null && !evolutionExecutor.isShutdown()) {
-            restartEvolutionLoop();
+        // Earlier generations are rewound to from the timeline
+        if (target < shownGeneration) {
+            simulation.send(Command.rewind(target));
+            return;
         }
-        keyWait.put(key, true);
+        simulation.send(Command.edit("jump", () -> jumpToGeneration(target)));
     }
 
     /**
-     * startEvolutionLoop evolves the cells on the grid at a given interval
+     * jumpToGeneration advances the grid to a later generation with HashLife,
+     * or with temporal blocking when the cells wrap around the edges, which
+     * HashLife does not support
      */
-    private static void startEvolutionLoop() {
-        evolutionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "Evolution-Thread");
-            t.setDaemon(true);
-            return t;
-        });
+    private static void jumpToGeneration(int target) {
+        int generations = target - grid.getGeneration();
+        if (generations <= 0) {
+            System.err.printf("Can only jump ahead of generation %d\n", grid.getGeneration());
+            return;
+        }
 
-        evolutionExecutor.scheduleAtFixedRate(() -> {
-            if (autoEvolution.get()) {
-                evolveAndUpdate();
+        long start = System.nanoTime();
+        if (grid.isWrap()) {
+            grid.fastForward(generations, new TemporalBlocking());
+            System.out.printf("Jumped to generation %d in %dms\n", grid.getGeneration(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return;
+        }
+        grid.fastForward(generations, hashLife);
+        System.out.printf("Jumped to generation %d in %dms (%d cached nodes)\n",
+                grid.getGeneration(), (System.nanoTime() - start) / 1_000_000, hashLife.getCacheSize());
+    }
+
+    /**
+     * promptSession asks for the path of a session file, defaulting to the
+     * last one used
+     */
+    private static Optional<Path> promptSession(String message) {
+        String input = JOptionPane.showInputDialog(frame, message, sessionFile);
+        if (input == null || input.isBlank()) {
+            return Optional.empty();
+        }
+        sessionFile = input.trim();
+        return Optional.of(Path.of(sessionFile));
+    }
+
+    /**
+     * saveSession copies the state of the grid on the evolution thread, then
+     * writes it to a session file on the session writer thread while the
+     * grid keeps evolving
+     */
+    private static void saveSession(Path file) {
+        long start = System.nanoTime();
+        Checkpoint checkpoint = grid.checkpoint();
+        long copied = System.nanoTime();
+        sessionWriter.execute(() -> {
+            try {
+                SessionFile.write(checkpoint, file);
+                System.out.printf("Saved generation %d to %s in %dms (%dms on the evolution thread)\n",
+                        checkpoint.getGeneration(), file, (System.nanoTime() - start) / 1_000_000,
+                        (copied - start) / 1_000_000);
+            } catch (IOException e) {
+                System.err.printf("Could not save the session: %s\n", e);
             }
-        }, evolutionInterval, evolutionInterval, TimeUnit.MILLISECONDS);
+        });
     }
 
     /**
-     * restartEvolutionLoop stops and starts the evolution executor. Used to
-     * update the executor with a new interval set by any UI interface
+     * loadSession replaces the state of the grid with a saved session
      */
-    private static void restartEvolutionLoop() {
-        if (evolutionExecutor != null && !evolutionExecutor.isShutdown()) {
-            evolutionExecutor.shutdownNow();
+    private static void loadSession(Path file) {
+        long start = System.nanoTime();
+        try {
+            grid.restore(SessionFile.read(file));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.printf("Could not load the session: %s\n", e.getMessage());
+            return;
         }
-        startEvolutionLoop();
+        System.out.printf("Loaded generation %d from %s in %dms\n", grid.getGeneration(), file,
+                (System.nanoTime() - start) / 1_000_000);
     }
 
     /**
-     * evolveAndUpdate evolves all the cell objects and repaints the frame
+     * startEvolutionLoop starts the thread that evolves the cells on the grid
+     * at the interval set by the tick speed controls
      */
-    private static void evolveAndUpdate() {
-        grid.evolve();
+    private static void startEvolutionLoop() {
+        simulation.start();
+    }
 
-        SwingUtilities.invokeLater(() -> {
-            genDisplay.setText("Gen: " + grid.getGeneration());
+    /**
+     * startRenderLoop samples the newest snapshot of the grid at the display
+     * rate and redraws the cells that changed since the previous sample.
+     * However fast the grid evolves, there is at most one repaint per sample.
+     */
+    private static void startRenderLoop() {
+        renderTimer = new Timer(RENDER_INTERVAL, e -> {
+            Snapshot snapshot = simulation.takeSnapshot();
+            if (snapshot == null) {
+                return;
+            }
+            Snapshot previous = gamePanel.show(snapshot);
+            if (previous != null) {
+                simulation.release(previous);
+            }
+            shownGeneration = snapshot.getGeneration();
+            genDisplay.show(shownGeneration, snapshot.getPeriod());
+
+            // Show what the control buttons do in the current state
+            boolean running = snapshot.isRunning();
+            playPauseButton.setText(running ? "⏸ Pause" : "▶ Play");
+            clearButton.setText(running ? "⏹ Stop" : "⏹ Clear");
+            wrapToggle.setText(snapshot.isWrap() ? "Wrap (on)" : "Wrap (off)");
+            autoPauseToggle.setText(snapshot.isAutoPause() ? "Auto-pause (on)" : "Auto-pause (off)");
         });
+        renderTimer.start();
     }
 
     /**
-     * cleanup cleanly stops the input timer and shuts down the evolution
-     * executor
+     * cleanup cleanly stops the render timer and the evolution thread
      */
     private static void cleanup() {
-        if (inputTimer != null) {
-            inputTimer.stop();
+        if (renderTimer != null) {
+            renderTimer.stop();
+        }
+        if (simulation != null) {
+            simulation.stop();
         }
-        if (evolutionExecutor != null) {
-            evolutionExecutor.shutdownNow();
+        // Let a session being saved finish
+        sessionWriter.shutdown();
+        try {
+            sessionWriter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -409,6 +552,58 @@ public class Life {
         } catch (ArrayIndexOutOfBoundsException e) {
             System.out.printf("No height arg was provided, defaulting to %d\n", height);
         }
+        if (height < 1 || height > Grid.MAX_SIDE) {
+            System.err.printf("Grid height must be between 1 and %d. Defaulting to 100\n", Grid.MAX_SIDE);
+            height = 100;
+        }
         return height;
     }
+
+    /**
+     * calcEngine gets the engine that computes each generation from user
+     * input if there is any, otherwise returns the default naive engine.
+     * e.g. "swar" computes 64 cells at a time from bit-packed rows.
+     *
+     * @param args
+     * @return The engine to evolve the grid with
+     */
+    private static Engine calcEngine(String[] args) {
+        String name = "naive";
+        if (args.length > 1) {
+            name = args[1];
+        } else {
+            System.out.printf("No engine arg was provided, defaulting to %s\n", name);
+        }
+        try {
+            return Engine.forName(name);
+        } catch (IllegalArgumentException e) {
+            System.err.printf("%s. Defaulting to naive\n", e.getMessage());
+            return Engine.forName("naive");
+        }
+    }
+
+    /**
+     * calcHashLifeNodes gets the cap on the number of nodes HashLife may cache
+     * from user input if there is any, otherwise returns the default cap.
+     *
+     * @param args
+     * @return The maximum number of HashLife nodes
+     */
+    private static int calcHashLifeNodes(String[] args) {
+        int maxNodes = HashLife.DEFAULT_MAX_NODES;
+        if (args.length > 2) {
+            try {
+                maxNodes = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                System.err.printf("Must provide an integer argument for HashLife nodes. Defaulting to %d\n",
+                        maxNodes);
+            }
+        }
+        if (maxNodes < HashLife.MIN_MAX_NODES) {
+            System.err.printf("HashLife nodes must be at least %d. Defaulting to %d\n", HashLife.MIN_MAX_NODES,
+                    HashLife.DEFAULT_MAX_NODES);
+            maxNodes = HashLife.DEFAULT_MAX_NODES;
+        }
+        return maxNodes;
+    }
 }
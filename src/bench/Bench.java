@@ -0,0 +1,516 @@
+package bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import engine.Engine;
+import gamePanel.GamePanel;
+import grid.Grid;
+import rleinput.RLEPattern;
+import rleinput.RLEWriter;
+import simulation.Simulation;
+import simulation.Snapshot;
+
+/**
+ * Bench measures the throughput of the parts of the program that decide how
+ * fast it runs: Grid.evolve with every engine, parsing RLE patterns and
+ * rendering the viewport into an image. Each benchmark runs for a number of
+ * warmup iterations, so that the JIT has compiled the hot code, and then for
+ * a number of measured iterations of a fixed duration.
+ *
+ * The results are written as JSON in the layout of JMH's JSON output, one
+ * result per line, so that runs of two commits can be compared with diff or
+ * with the tools that read JMH results.
+ */
+public class Bench {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: Life --bench [options]",
+            "  --filter <regex>       only run benchmarks whose name and parameters match,",
+            "                         e.g. \"evolve engine=swar size=1024\"",
+            "  --sizes <n,...>        grid sizes (default 64,256,1024,4096,8192)",
+            "  --densities <d,...>    fractions of living cells of the soups (default 0.1,0.3,0.5)",
+            "  --engines <name,...>   engines to evolve the grid with (default all)",
+            "  --wrap <on|off|both>   wrap cells around the edges of the grid (default both)",
+            "  --warmup <n>           warmup iterations (default 3)",
+            "  --iterations <n>       measured iterations (default 5)",
+            "  --time <ms>            duration of an iteration (default 500)",
+            "  --image <px>           side of the image the viewport is rendered into (default 1400)",
+            "  --out <file>           file to write the JSON results to (default bench.json)",
+            "  --help                 print this message");
+
+    private static final String[] ENGINES = { "naive", "swar", "frontier", "sparse", "parallel", "vector", "count", "lut" };
+
+    /**
+     * SEED seeds the random soups, so that every run measures the same cells
+     */
+    private static final long SEED = 42;
+
+    /**
+     * T_999 holds the 99.9% two-sided quantiles of Student's t distribution
+     * for 1 to 30 degrees of freedom, used for the error of a score like JMH
+     * does. More degrees of freedom use the last one, which overestimates
+     * the error a little.
+     */
+    private static final double[] T_999 = {
+            636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+            4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+            3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646 };
+
+    private Pattern filter;
+    private int[] sizes = { 64, 256, 1024, 4096, 8192 };
+    private double[] densities = { 0.1, 0.3, 0.5 };
+    private String[] engines = ENGINES;
+    private boolean[] wraps = { false, true };
+    private int warmup = 3;
+    private int iterations = 5;
+    private int iterationTime = 500;
+    private int imageSize = 1400;
+    private String outFile = "bench.json";
+
+    private final List<Result> results = new ArrayList<>();
+
+    /**
+     * sink receives a value computed by each benchmark so that the JIT cannot
+     * leave out the work that produced it
+     */
+    private volatile long sink;
+
+    /**
+     * Result is the scores of the measured iterations of a benchmark, in
+     * operations per second
+     */
+    private static class Result {
+        final String benchmark;
+        final Map<String, String> params;
+        final double[] scores;
+
+        Result(String benchmark, Map<String, String> params, double[] scores) {
+            this.benchmark = benchmark;
+            this.params = params;
+            this.scores = scores;
+        }
+
+        double mean() {
+            double sum = 0;
+            for (double score : this.scores) {
+                sum += score;
+            }
+            return sum / this.scores.length;
+        }
+
+        /**
+         * error returns the half width of the 99.9% confidence interval of
+         * the mean, NaN with a single iteration
+         */
+        double error() {
+            int n = this.scores.length;
+            if (n < 2) {
+                return Double.NaN;
+            }
+            double mean = mean();
+            double squares = 0;
+            for (double score : this.scores) {
+                squares += (score - mean) * (score - mean);
+            }
+            double stdev = Math.sqrt(squares / (n - 1));
+            return T_999[Math.min(n - 1, T_999.length) - 1] * stdev / Math.sqrt(n);
+        }
+    }
+
+    /**
+     * run parses the options, runs the benchmarks and returns the exit code
+     * of the program: 0 on success, 1 if the results could not be written
+     * and 2 for invalid options
+     *
+     * @param args The command line arguments after --bench
+     */
+    public static int run(String[] args) {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.printf("%s%n", USAGE);
+            return 0;
+        }
+
+        // Rendering draws into an image, no display is needed
+        System.setProperty("java.awt.headless", "true");
+
+        Bench bench = new Bench();
+        try {
+            bench.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.printf("%s%n%s%n", e.getMessage(), USAGE);
+            return 2;
+        }
+
+        try {
+            bench.evolveBenchmarks();
+            bench.parseBenchmarks();
+            bench.renderBenchmarks();
+        } catch (IllegalArgumentException e) {
+            System.err.printf("%s%n", e.getMessage());
+            return 2;
+        }
+
+        try (Writer out = Files.newBufferedWriter(Path.of(bench.outFile))) {
+            bench.writeJson(out);
+        } catch (IOException e) {
+            System.err.printf("%s%n", e);
+            return 1;
+        }
+        System.out.printf("Wrote %d results to %s%n", bench.results.size(), bench.outFile);
+        return 0;
+    }
+
+    /**
+     * parseArgs sets the options from the command line arguments
+     */
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--filter":
+                    try {
+                        this.filter = Pattern.compile(value(args, ++i));
+                    } catch (PatternSyntaxException e) {
+                        throw new IllegalArgumentException("Invalid filter: " + e.getDescription());
+                    }
+                    break;
+                case "--sizes":
+                    String[] sizes = value(args, ++i).split(",");
+                    this.sizes = new int[sizes.length];
+                    for (int j = 0; j < sizes.length; j++) {
+                        this.sizes[j] = integer(args[i - 1], sizes[j], 1);
+                    }
+                    break;
+                case "--densities":
+                    String[] densities = value(args, ++i).split(",");
+                    this.densities = new double[densities.length];
+                    for (int j = 0; j < densities.length; j++) {
+                        this.densities[j] = density(densities[j]);
+                    }
+                    break;
+                case "--engines":
+                    this.engines = value(args, ++i).split(",");
+                    break;
+                case "--wrap":
+                    String wrap = value(args, ++i);
+                    switch (wrap) {
+                        case "on":
+                            this.wraps = new boolean[] { true };
+                            break;
+                        case "off":
+                            this.wraps = new boolean[] { false };
+                            break;
+                        case "both":
+                            this.wraps = new boolean[] { false, true };
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Option '--wrap' takes on, off or both, got '" + wrap + "'");
+                    }
+                    break;
+                case "--warmup":
+                    this.warmup = integer(args[i], value(args, ++i), 0);
+                    break;
+                case "--iterations":
+                    this.iterations = integer(args[i], value(args, ++i), 1);
+                    break;
+                case "--time":
+                    this.iterationTime = integer(args[i], value(args, ++i), 1);
+                    break;
+                case "--image":
+                    this.imageSize = integer(args[i], value(args, ++i), 1);
+                    break;
+                case "--out":
+                    this.outFile = value(args, ++i);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option '" + args[i] + "'");
+            }
+        }
+    }
+
+    /**
+     * evolveBenchmarks measures the generations per second of every engine on
+     * random soups
+     */
+    private void evolveBenchmarks() {
+        for (String engineName : this.engines) {
+            for (int size : this.sizes) {
+                for (double density : this.densities) {
+                    for (boolean wrap : this.wraps) {
+                        Map<String, String> params = new LinkedHashMap<>();
+                        params.put("engine", engineName);
+                        params.put("size", String.valueOf(size));
+                        params.put("density", String.valueOf(density));
+                        params.put("wrap", String.valueOf(wrap));
+                        if (!selected("evolve", params)) {
+                            continue;
+                        }
+
+                        Grid grid = new Grid(size, Engine.forName(engineName));
+                        grid.setWrap(wrap);
+                        // Every iteration starts from the same soup, as soups
+                        // settle down and get cheaper to evolve over time
+                        measure("evolve", params, () -> soup(grid, density), () -> {
+                            grid.evolve();
+                            return grid.getChanges().size();
+                        });
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * parseBenchmarks measures how many times per second a soup written as
+     * RLE is parsed
+     */
+    private void parseBenchmarks() {
+        for (int size : this.sizes) {
+            for (double density : this.densities) {
+                Map<String, String> params = new LinkedHashMap<>();
+                params.put("size", String.valueOf(size));
+                params.put("density", String.valueOf(density));
+                if (!selected("parse", params)) {
+                    continue;
+                }
+
+                Grid grid = new Grid(size, Engine.forName("swar"));
+                soup(grid, density);
+                StringWriter text = new StringWriter();
+                try {
+                    RLEWriter.write(grid, text);
+                } catch (IOException e) {
+                    // A StringWriter does not throw
+                    throw new IllegalStateException(e);
+                }
+                String rle = text.toString();
+                measure("parse", params, () -> {
+                }, () -> RLEPattern.parse(rle).getPopulation());
+            }
+        }
+    }
+
+    /**
+     * renderBenchmarks measures how many times per second the whole viewport
+     * is drawn into an image
+     */
+    private void renderBenchmarks() {
+        for (int size : this.sizes) {
+            for (double density : this.densities) {
+                Map<String, String> params = new LinkedHashMap<>();
+                params.put("size", String.valueOf(size));
+                params.put("density", String.valueOf(density));
+                params.put("image", String.valueOf(this.imageSize));
+                if (!selected("render", params)) {
+                    continue;
+                }
+
+                Grid grid = new Grid(size, Engine.forName("swar"));
+                soup(grid, density);
+                GamePanel panel = new GamePanel(grid, new Simulation(grid, 0));
+                panel.setSize(this.imageSize, this.imageSize);
+                panel.show(Snapshot.of(grid));
+                BufferedImage image = new BufferedImage(this.imageSize, this.imageSize, BufferedImage.TYPE_INT_RGB);
+                Graphics2D graphics = image.createGraphics();
+                measure("render", params, () -> {
+                }, () -> {
+                    panel.refresh();
+                    panel.paint(graphics);
+                    return image.getRGB(0, 0);
+                });
+                graphics.dispose();
+            }
+        }
+    }
+
+    /**
+     * selected tells whether a benchmark matches the filter
+     */
+    private boolean selected(String benchmark, Map<String, String> params) {
+        return this.filter == null || this.filter.matcher(describe(benchmark, params)).find();
+    }
+
+    /**
+     * measure runs the warmup and measured iterations of a benchmark. Each
+     * iteration calls setup, which is not measured, then op until the
+     * iteration time is up.
+     */
+    private void measure(String benchmark, Map<String, String> params, Runnable setup, LongSupplier op) {
+        System.gc();
+        long duration = this.iterationTime * 1_000_000L;
+        double[] scores = new double[this.iterations];
+        for (int i = -this.warmup; i < this.iterations; i++) {
+            setup.run();
+            long value = 0;
+            long ops = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                value += op.getAsLong();
+                ops++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < duration);
+            this.sink = value;
+
+            if (i >= 0) {
+                scores[i] = ops / (elapsed / 1e9);
+            }
+        }
+
+        Result result = new Result(benchmark, params, scores);
+        this.results.add(result);
+        System.out.printf(Locale.ROOT, "%-60s %12.3f +- %9.3f ops/s%n", describe(benchmark, params), result.mean(),
+                result.error());
+    }
+
+    /**
+     * soup clears the grid and sets cells alive at random with the given
+     * probability
+     */
+    private static void soup(Grid grid, double density) {
+        grid.clearGrid();
+        Random random = new Random(SEED);
+        for (int y = 0; y < grid.getHeight(); y++) {
+            for (int x = 0; x < grid.getWidth(); x++) {
+                if (random.nextDouble() < density) {
+                    grid.setAlive(y, x, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * describe returns the name and parameters of a benchmark, e.g.
+     * "evolve engine=swar size=64 density=0.1 wrap=false"
+     */
+    private static String describe(String benchmark, Map<String, String> params) {
+        StringBuilder description = new StringBuilder(benchmark);
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            description.append(' ').append(param.getKey()).append('=').append(param.getValue());
+        }
+        return description.toString();
+    }
+
+    /**
+     * writeJson writes the results as a JSON array in the layout of JMH's
+     * JSON output, one result per line
+     */
+    private void writeJson(Writer out) throws IOException {
+        String jvm = String.format("\"jdkVersion\": %s, \"vmName\": %s, \"vmVersion\": %s",
+                quote(System.getProperty("java.version")), quote(System.getProperty("java.vm.name")),
+                quote(System.getProperty("java.vm.version")));
+        String iterations = String.format(
+                "\"warmupIterations\": %d, \"warmupTime\": \"%d ms\", \"measurementIterations\": %d, \"measurementTime\": \"%d ms\"",
+                this.warmup, this.iterationTime, this.iterations, this.iterationTime);
+
+        out.write("[");
+        out.write(System.lineSeparator());
+        for (int i = 0; i < this.results.size(); i++) {
+            Result result = this.results.get(i);
+
+            StringBuilder params = new StringBuilder();
+            for (Map.Entry<String, String> param : result.params.entrySet()) {
+                params.append(params.length() > 0 ? ", " : "");
+                params.append(quote(param.getKey())).append(": ").append(quote(param.getValue()));
+            }
+            StringBuilder rawData = new StringBuilder();
+            for (double score : result.scores) {
+                rawData.append(rawData.length() > 0 ? ", " : "").append(number(score));
+            }
+            double mean = result.mean();
+            double error = result.error();
+
+            out.write(String.format("{\"benchmark\": %s, \"mode\": \"thrpt\", \"threads\": 1, \"forks\": 1, %s, %s, "
+                    + "\"params\": {%s}, \"primaryMetric\": {\"score\": %s, \"scoreError\": %s, "
+                    + "\"scoreConfidence\": [%s, %s], \"scoreUnit\": \"ops/s\", \"rawData\": [[%s]]}, "
+                    + "\"secondaryMetrics\": {}}",
+                    quote("bench.Bench." + result.benchmark), jvm, iterations, params, number(mean), number(error),
+                    number(mean - error), number(mean + error), rawData));
+            out.write(i < this.results.size() - 1 ? "," : "");
+            out.write(System.lineSeparator());
+        }
+        out.write("]");
+        out.write(System.lineSeparator());
+    }
+
+    /**
+     * number formats a number for JSON, which has no NaN
+     */
+    private static String number(double value) {
+        return Double.isNaN(value) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * quote returns a string as a JSON string literal
+     */
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * value returns the value of an option
+     */
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for option '" + args[i - 1] + "'");
+        }
+        return args[i];
+    }
+
+    /**
+     * integer returns the integer value of an option, which must be at least
+     * min
+     */
+    private static int integer(String option, String value, int min) {
+        try {
+            int number = Integer.parseInt(value.trim());
+            if (number >= min) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(
+                "Option '" + option + "' takes integers from " + min + ", got '" + value + "'");
+    }
+
+    /**
+     * density returns a fraction of living cells given as an option
+     */
+    private static double density(String value) {
+        try {
+            double density = Double.parseDouble(value.trim());
+            if (density >= 0 && density <= 1) {
+                return density;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Option '--densities' takes numbers from 0 to 1, got '" + value + "'");
+    }
+}
@@ -0,0 +1,250 @@
+package engine;
+
+import java.util.Arrays;
+
+import rule.Rule;
+
+/**
+ * CountEngine keeps the number of living neighbors of every cell in a plane
+ * of bytes, updated incrementally: when a cell is born or dies, the counts of
+ * its 8 neighbors are adjusted. Only the cells whose state or count changed,
+ * the candidates, can change in the next step, so a step costs time
+ * proportional to the births and deaths rather than to the area of the grid.
+ * Rules that are not totalistic look up the neighborhood of each candidate in
+ * the rule table instead of using its count.
+ *
+ * dst holds the generation before src, so it is first brought up to date by
+ * flipping the cells that changed in the last step and the cells edited
+ * since, then only the cells that change are written to it.
+ */
+public class CountEngine implements Engine {
+
+    /**
+     * COUNT, ALIVE and QUEUED are the bits of the byte of a cell: its number
+     * of living neighbors, whether it is living and whether it is a
+     * candidate for the next step
+     */
+    private static final int COUNT = 0x0f;
+    private static final int ALIVE = 0x10;
+    private static final int QUEUED = 0x20;
+
+    private int height;
+    private int width;
+    private boolean wrap;
+    private int tileCols;
+
+    /**
+     * cells holds the byte of the cell at (y, x) at index y * width + x
+     */
+    private byte[] cells;
+
+    /**
+     * candidates holds the cells that may change in the next step, flips the
+     * cells that changed in the last step, and touched the cells edited since
+     * the last step, all by index
+     */
+    private int[] candidates = new int[64];
+    private int candidateCount = 0;
+    private int[] flips = new int[64];
+    private int flipCount = 0;
+    private int[] touched = new int[64];
+    private int touchedCount = 0;
+
+    /**
+     * changed holds, for every tile, whether a cell of it changed during the
+     * last step
+     */
+    private boolean[] changed;
+
+    /**
+     * rebuild is set when the counts have to be computed from the whole grid
+     * before the next step
+     */
+    private boolean rebuild = true;
+
+    @Override
+    public void step(long[][] src, long[][] dst, int width, boolean wrap, Rule rule) {
+        if (this.rebuild || this.cells == null || src.length != this.height || width != this.width
+                || wrap != this.wrap) {
+            rebuild(src, dst, width, wrap);
+        } else {
+            sync(src, dst);
+        }
+
+        // Find the candidates that change, before any count is updated
+        int birthCounts = rule.getBirthCounts();
+        int survivalCounts = rule.getSurvivalCounts();
+        // The flips of the last step were applied by sync, so their array is
+        // reused for the flips of this step
+        int[] next = this.flips;
+        int nextCount = 0;
+        for (int k = 0; k < this.candidateCount; k++) {
+            int index = this.candidates[k];
+            int cell = this.cells[index] & ~QUEUED;
+            this.cells[index] = (byte) cell;
+
+            boolean alive = (cell & ALIVE) != 0;
+            boolean living;
+            if (rule.isTotalistic()) {
+                living = (((alive ? survivalCounts : birthCounts) >>> (cell & COUNT)) & 1) != 0;
+            } else {
+                living = rule.next(NaiveEngine.neighborhood(src, width, wrap, index / width, index % width));
+            }
+            if (living != alive) {
+                if (nextCount == next.length) {
+                    next = Arrays.copyOf(next, next.length * 2);
+                }
+                next[nextCount++] = index;
+            }
+        }
+
+        // Apply the changes, and make the changed cells and their neighbors
+        // the candidates of the next step
+        this.candidateCount = 0;
+        Arrays.fill(this.changed, false);
+        for (int k = 0; k < nextCount; k++) {
+            int index = next[k];
+            int y = index / width;
+            int x = index - y * width;
+            dst[y][x >>> 6] ^= 1L << x;
+            this.changed[(y / TILE_SIZE) * this.tileCols + (x >>> 6)] = true;
+            flip(index);
+        }
+        this.flips = next;
+        this.flipCount = nextCount;
+    }
+
+    /**
+     * rebuild counts the neighbors of every cell of src, makes every cell
+     * that is living or has a living neighbor a candidate, and copies src
+     * into dst
+     */
+    private void rebuild(long[][] src, long[][] dst, int width, boolean wrap) {
+        this.height = src.length;
+        this.width = width;
+        this.wrap = wrap;
+        this.tileCols = PackedRows.words(width);
+        int tiles = ((this.height + TILE_SIZE - 1) / TILE_SIZE) * this.tileCols;
+        if (this.cells == null || this.cells.length != this.height * width) {
+            this.cells = new byte[this.height * width];
+        } else {
+            Arrays.fill(this.cells, (byte) 0);
+        }
+        if (this.changed == null || this.changed.length != tiles) {
+            this.changed = new boolean[tiles];
+        }
+
+        this.candidateCount = 0;
+        for (int y = 0; y < this.height; y++) {
+            for (int i = 0; i < src[y].length; i++) {
+                long word = src[y][i];
+                while (word != 0) {
+                    int index = y * width + (i << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    flip(index);
+                }
+            }
+            System.arraycopy(src[y], 0, dst[y], 0, src[y].length);
+        }
+        this.flipCount = 0;
+        this.touchedCount = 0;
+        this.rebuild = false;
+    }
+
+    /**
+     * sync brings dst up to date with src by flipping the cells that changed
+     * in the last step, and the counts up to date with the cells edited since
+     */
+    private void sync(long[][] src, long[][] dst) {
+        for (int k = 0; k < this.flipCount; k++) {
+            int index = this.flips[k];
+            int y = index / this.width;
+            int x = index - y * this.width;
+            dst[y][x >>> 6] ^= 1L << x;
+        }
+        for (int k = 0; k < this.touchedCount; k++) {
+            int index = this.touched[k];
+            int y = index / this.width;
+            int x = index - y * this.width;
+            boolean alive = PackedRows.get(src[y], x);
+            PackedRows.set(dst[y], x, alive);
+            if (alive != ((this.cells[index] & ALIVE) != 0)) {
+                flip(index);
+            }
+        }
+        this.touchedCount = 0;
+    }
+
+    /**
+     * flip switches a cell between living and dead, adjusts the counts of
+     * its neighbors and makes them and the cell candidates
+     */
+    private void flip(int index) {
+        int delta = (this.cells[index] & ALIVE) != 0 ? -1 : 1;
+        this.cells[index] ^= ALIVE;
+        queue(index);
+
+        int y = index / this.width;
+        int x = index - y * this.width;
+        for (int dy = -1; dy <= 1; dy++) {
+            int row = y + dy;
+            if (row < 0 || row >= this.height) {
+                if (!this.wrap) {
+                    continue;
+                }
+                row = row < 0 ? this.height - 1 : 0;
+            }
+            for (int dx = -1; dx <= 1; dx++) {
+                if (dy == 0 && dx == 0) {
+                    continue;
+                }
+                int col = x + dx;
+                if (col < 0 || col >= this.width) {
+                    if (!this.wrap) {
+                        continue;
+                    }
+                    col = col < 0 ? this.width - 1 : 0;
+                }
+                int neighbor = row * this.width + col;
+                this.cells[neighbor] += delta;
+                queue(neighbor);
+            }
+        }
+    }
+
+    /**
+     * queue makes a cell a candidate for the next step, once
+     */
+    private void queue(int index) {
+        if ((this.cells[index] & QUEUED) != 0) {
+            return;
+        }
+        this.cells[index] |= QUEUED;
+        if (this.candidateCount == this.candidates.length) {
+            this.candidates = Arrays.copyOf(this.candidates, this.candidates.length * 2);
+        }
+        this.candidates[this.candidateCount++] = index;
+    }
+
+    @Override
+    public boolean tileChanged(int tileRow, int word) {
+        return this.changed == null || this.changed[tileRow * this.tileCols + word];
+    }
+
+    @Override
+    public void touch(int y, int x) {
+        if (this.rebuild || this.cells == null || y >= this.height || x >= this.width) {
+            this.rebuild = true;
+            return;
+        }
+        if (this.touchedCount == this.touched.length) {
+            this.touched = Arrays.copyOf(this.touched, this.touched.length * 2);
+        }
+        this.touched[this.touchedCount++] = y * this.width + x;
+    }
+
+    @Override
+    public void reset() {
+        this.rebuild = true;
+    }
+}
@@ -0,0 +1,137 @@
+package engine;
+
+import rule.Rule;
+
+/**
+ * Engine computes the next generation of a bit-packed grid (see PackedRows).
+ * The engine used by a Grid is picked at startup by name.
+ */
+public interface Engine {
+
+    /**
+     * TILE_SIZE is the side of the square tiles, in number of cells, that
+     * engines report their activity in. A tile is one word wide.
+     */
+    int TILE_SIZE = 64;
+
+    /**
+     * step writes the generation that follows src into dst. Both grids have
+     * the same dimensions and src is never modified.
+     *
+     * @param src   The current generation
+     * @param dst   The grid to write the next generation into
+     * @param width The width of the grid in number of cells
+     * @param wrap  Whether cells wrap around the edges of the grid
+     * @param rule  The rule to apply
+     */
+    void step(long[][] src, long[][] dst, int width, boolean wrap, Rule rule);
+
+    /**
+     * tileChanged tells whether a tile may have changed during the last step.
+     * Words of a tile that did not change are equal in src and dst, so they
+     * can be skipped when looking for changed cells.
+     *
+     * @param tileRow The row of the tile, i.e. y / TILE_SIZE
+     * @param word    The word of the rows the tile covers, i.e. x / 64
+     */
+    default boolean tileChanged(int tileRow, int word) {
+        return true;
+    }
+
+    /**
+     * touch tells the engine that a cell was changed outside of step, e.g.
+     * by a user edit
+     */
+    default void touch(int y, int x) {
+    }
+
+    /**
+     * reset tells the engine that any cell may have changed outside of step,
+     * e.g. when a pattern is loaded or the rule changes
+     */
+    default void reset() {
+    }
+
+    /**
+     * clear tells the engine that every cell of the grid was set to dead
+     */
+    default void clear() {
+        reset();
+    }
+
+    /**
+     * forName creates the engine with the given name. Some engines take a
+     * parameter after a colon, e.g. "parallel:8".
+     *
+     * @param name "naive" for the cell-by-cell engine, "swar" for the engine
+     *             that computes 64 cells at a time, "frontier" for the swar
+     *             engine that skips tiles with no activity, "sparse" for the
+     *             engine that runs on an unbounded plane, "parallel[:N]"
+     *             for the swar engine running on N threads (all cores by
+     *             default), "vector" for the swar engine on SIMD vectors,
+     *             "count" for the engine that only visits the cells around
+     *             births and deaths, or "lut" for the engine that looks up
+     *             2x2 cells at a time in a table
+     * @return A new engine
+     */
+    static Engine forName(String name) {
+        String param = null;
+        int colon = name.indexOf(':');
+        if (colon >= 0) {
+            param = name.substring(colon + 1);
+            name = name.substring(0, colon);
+        }
+
+        switch (name) {
+            case "naive":
+                return new NaiveEngine();
+            case "swar":
+                return new SwarEngine();
+            case "frontier":
+                return new FrontierEngine();
+            case "sparse":
+                return new SparseEngine();
+            case "parallel":
+                return new ParallelEngine(param == null
+                        ? Runtime.getRuntime().availableProcessors()
+                        : parseParam(name, param));
+            case "vector":
+                return vectorEngine();
+            case "count":
+                return new CountEngine();
+            case "lut":
+                return new LutEngine();
+            default:
+                throw new IllegalArgumentException("Unknown engine '" + name + "'");
+        }
+    }
+
+    /**
+     * vectorEngine creates a VectorEngine, or a SwarEngine if the
+     * jdk.incubator.vector module was not added to the JVM. VectorEngine is
+     * loaded by name so that the other engines work without the module.
+     */
+    private static Engine vectorEngine() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            System.err.printf("jdk.incubator.vector is not available, using the swar engine%n");
+            return new SwarEngine();
+        }
+        try {
+            return (Engine) Class.forName("engine.VectorEngine").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.printf("Could not load the vector engine (%s), using the swar engine%n", e);
+            return new SwarEngine();
+        }
+    }
+
+    /**
+     * parseParam parses the integer parameter of an engine name
+     */
+    private static int parseParam(String name, String param) {
+        try {
+            return Integer.parseInt(param);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Engine '" + name + "' takes an integer, got '" + param + "'");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package engine;
+
+import rule.Rule;
+
+/**
+ * FastForward advances a bit-packed grid (see PackedRows) by many
+ * generations at once, without going through every intermediate generation
+ * the way an Engine does.
+ */
+public interface FastForward {
+
+    /**
+     * advance replaces the cells of a packed grid with the generation that
+     * comes a number of generations later
+     *
+     * @param cells       The packed grid to advance in place
+     * @param width       The width of the grid in number of cells
+     * @param wrap        Whether cells wrap around the edges of the grid
+     * @param rule        The rule to apply
+     * @param generations The number of generations to advance by
+     */
+    void advance(long[][] cells, int width, boolean wrap, Rule rule, long generations);
+}
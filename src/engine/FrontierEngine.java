@@ -0,0 +1,157 @@
+package engine;
+
+import java.util.Arrays;
+
+import rule.Rule;
+
+/**
+ * FrontierEngine computes generations like SwarEngine, but only for the
+ * tiles near activity, in the style of Golly's QuickLife. A tile that did not
+ * change in the last step, and whose neighbor tiles did not change either,
+ * cannot change in the next step, so it is put to sleep until a neighbor (or
+ * an edit) wakes it up. The cost of a step is then proportional to the area
+ * of activity rather than to the area of the grid.
+ *
+ * A sleeping tile is not written to dst: since the tile did not change, dst
+ * still holds the same words from when it was last computed.
+ */
+public class FrontierEngine implements Engine {
+
+    private int tileRows;
+    private int tileCols;
+    private int width;
+    private boolean wrap;
+    private Rule rule;
+
+    /**
+     * changed holds, for every tile, whether it changed during the last step.
+     * Tile (tileRow, word) is at index tileRow * tileCols + word.
+     */
+    private boolean[] changed;
+
+    /**
+     * next holds whether each tile changes during the step being computed
+     */
+    private boolean[] next;
+
+    /**
+     * awake is set for every tile that has to be computed in the next step
+     */
+    private boolean[] awake;
+
+    /**
+     * dirty is set for tiles edited since the last step
+     */
+    private boolean[] dirty;
+
+    /**
+     * allDirty is set when every tile has to be computed in the next step
+     */
+    private boolean allDirty = true;
+
+    @Override
+    public void step(long[][] src, long[][] dst, int width, boolean wrap, Rule rule) {
+        int height = src.length;
+        int tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        int tileCols = PackedRows.words(width);
+
+        // The whole grid has to be computed the first time, and whenever its
+        // dimensions, edges or rule change
+        if (this.changed == null || tileRows != this.tileRows || tileCols != this.tileCols
+                || width != this.width || wrap != this.wrap || !rule.equals(this.rule)) {
+            this.tileRows = tileRows;
+            this.tileCols = tileCols;
+            this.width = width;
+            this.wrap = wrap;
+            this.rule = rule;
+            this.changed = new boolean[tileRows * tileCols];
+            this.next = new boolean[tileRows * tileCols];
+            this.awake = new boolean[tileRows * tileCols];
+            this.dirty = new boolean[tileRows * tileCols];
+            this.allDirty = true;
+        }
+
+        wakeTiles();
+
+        long[] empty = new long[tileCols];
+        Arrays.fill(this.next, false);
+        for (int tileRow = 0; tileRow < tileRows; tileRow++) {
+            int top = tileRow * TILE_SIZE;
+            int bottom = Math.min(top + TILE_SIZE, height);
+            for (int word = 0; word < tileCols; word++) {
+                if (!this.awake[tileRow * tileCols + word]) {
+                    continue;
+                }
+
+                long diff = 0;
+                for (int y = top; y < bottom; y++) {
+                    long[] above = y > 0 ? src[y - 1] : (wrap ? src[height - 1] : empty);
+                    long[] below = y < height - 1 ? src[y + 1] : (wrap ? src[0] : empty);
+                    long value = SwarEngine.stepWord(above, src[y], below, word, width, wrap, rule);
+                    diff |= value ^ src[y][word];
+                    dst[y][word] = value;
+                }
+                this.next[tileRow * tileCols + word] = diff != 0;
+            }
+        }
+
+        boolean[] swap = this.changed;
+        this.changed = this.next;
+        this.next = swap;
+        Arrays.fill(this.dirty, false);
+        this.allDirty = false;
+    }
+
+    /**
+     * wakeTiles marks every tile that changed or was edited, and the tiles
+     * around them, as awake
+     */
+    private void wakeTiles() {
+        if (this.allDirty) {
+            Arrays.fill(this.awake, true);
+            return;
+        }
+
+        Arrays.fill(this.awake, false);
+        for (int tileRow = 0; tileRow < this.tileRows; tileRow++) {
+            for (int word = 0; word < this.tileCols; word++) {
+                int index = tileRow * this.tileCols + word;
+                if (!this.changed[index] && !this.dirty[index]) {
+                    continue;
+                }
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int row = tileRow + dy;
+                        int col = word + dx;
+                        if (this.wrap) {
+                            row = Math.floorMod(row, this.tileRows);
+                            col = Math.floorMod(col, this.tileCols);
+                        } else if (row < 0 || row >= this.tileRows || col < 0 || col >= this.tileCols) {
+                            continue;
+                        }
+                        this.awake[row * this.tileCols + col] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean tileChanged(int tileRow, int word) {
+        return this.changed == null || this.changed[tileRow * this.tileCols + word];
+    }
+
+    @Override
+    public void touch(int y, int x) {
+        if (this.dirty == null || y / TILE_SIZE >= this.tileRows || x / 64 >= this.tileCols) {
+            this.allDirty = true;
+            return;
+        }
+        this.dirty[(y / TILE_SIZE) * this.tileCols + x / 64] = true;
+    }
+
+    @Override
+    public void reset() {
+        this.allDirty = true;
+    }
+}
@@ -0,0 +1,158 @@
+package engine;
+
+import java.util.Arrays;
+
+import rule.Rule;
+
+/**
+ * LutEngine computes the next generation 2x2 cells at a time by looking up
+ * the 4x4 block of cells around them in a table of 65536 entries, built from
+ * the rule when it changes. Each step of the inner loop reads a 4-bit slice
+ * of four rows and does a single lookup, with no branches, so it is a fast
+ * baseline that does not rely on SIMD. Any rule works the same way, whether
+ * it is totalistic or not.
+ */
+public class LutEngine implements Engine {
+
+    /**
+     * table holds, for each 4x4 block, the next state of its central 2x2
+     * cells. Bit 4 * r + c of a block is the cell at row r and column c of
+     * the block. Bits 0 and 1 of an entry are the central cells of row 1,
+     * bits 2 and 3 those of row 2.
+     */
+    private final byte[] table = new byte[1 << 16];
+    private Rule rule;
+
+    /**
+     * rows holds the four rows around the two rows being computed, shifted
+     * by one cell so that bit x + 1 is the cell at x, with the cells beyond
+     * the edges at bits 0 and width + 1
+     */
+    private long[][] rows = new long[4][0];
+
+    @Override
+    public void step(long[][] src, long[][] dst, int width, boolean wrap, Rule rule) {
+        if (!rule.equals(this.rule)) {
+            buildTable(rule);
+        }
+        int height = src.length;
+        int words = PackedRows.words(width);
+        if (this.rows[0].length != words + 1) {
+            this.rows = new long[4][words + 1];
+        }
+        long lastMask = PackedRows.lastWordMask(width);
+
+        shiftRow(src, -1, width, wrap, this.rows[2]);
+        shiftRow(src, 0, width, wrap, this.rows[3]);
+        for (int y = 0; y < height; y += 2) {
+            // The two rows above are the two rows below of the last pair
+            long[] swap = this.rows[0];
+            this.rows[0] = this.rows[2];
+            this.rows[2] = swap;
+            swap = this.rows[1];
+            this.rows[1] = this.rows[3];
+            this.rows[3] = swap;
+            shiftRow(src, y + 1, width, wrap, this.rows[2]);
+            shiftRow(src, y + 2, width, wrap, this.rows[3]);
+
+            long[] r0 = this.rows[0];
+            long[] r1 = this.rows[1];
+            long[] r2 = this.rows[2];
+            long[] r3 = this.rows[3];
+            long[] top = dst[y];
+            long[] bottom = y + 1 < height ? dst[y + 1] : null;
+            for (int i = 0; i < words; i++) {
+                long a = r0[i];
+                long b = r1[i];
+                long c = r2[i];
+                long d = r3[i];
+                long upper = 0;
+                long lower = 0;
+                for (int shift = 0; shift < 62; shift += 2) {
+                    int next = this.table[(int) ((a >>> shift) & 0xf) | (int) ((b >>> shift) & 0xf) << 4
+                            | (int) ((c >>> shift) & 0xf) << 8 | (int) ((d >>> shift) & 0xf) << 12];
+                    upper |= (long) (next & 3) << shift;
+                    lower |= (long) ((next >>> 2) & 3) << shift;
+                }
+
+                // The last two cells of the word need the first two bits of
+                // the next word
+                int next = this.table[(int) (((a >>> 62) | (r0[i + 1] << 2)) & 0xf)
+                        | (int) (((b >>> 62) | (r1[i + 1] << 2)) & 0xf) << 4
+                        | (int) (((c >>> 62) | (r2[i + 1] << 2)) & 0xf) << 8
+                        | (int) (((d >>> 62) | (r3[i + 1] << 2)) & 0xf) << 12];
+                upper |= (long) (next & 3) << 62;
+                lower |= (long) ((next >>> 2) & 3) << 62;
+
+                top[i] = upper;
+                if (bottom != null) {
+                    bottom[i] = lower;
+                }
+            }
+
+            // Clear the cells past the right edge
+            top[words - 1] &= lastMask;
+            if (bottom != null) {
+                bottom[words - 1] &= lastMask;
+            }
+        }
+    }
+
+    /**
+     * shiftRow copies row y of the grid into a row shifted by one cell, with
+     * the cells beyond the left and right edges. Rows beyond the top and
+     * bottom edges are empty unless the grid wraps.
+     */
+    private static void shiftRow(long[][] src, int y, int width, boolean wrap, long[] out) {
+        int height = src.length;
+        if (y < 0 || y >= height) {
+            if (!wrap) {
+                Arrays.fill(out, 0);
+                return;
+            }
+            y = Math.floorMod(y, height);
+        }
+        long[] row = src[y];
+        long carry = 0;
+        for (int i = 0; i < row.length; i++) {
+            out[i] = (row[i] << 1) | carry;
+            carry = row[i] >>> 63;
+        }
+        out[row.length] = carry;
+        if (wrap) {
+            if (PackedRows.get(row, width - 1)) {
+                out[0] |= 1;
+            }
+            if (PackedRows.get(row, 0)) {
+                out[(width + 1) >>> 6] |= 1L << (width + 1);
+            }
+        }
+    }
+
+    /**
+     * buildTable fills the table with the next state of the central cells of
+     * every 4x4 block under a rule
+     */
+    private void buildTable(Rule rule) {
+        for (int block = 0; block < this.table.length; block++) {
+            int next = 0;
+            for (int r = 1; r <= 2; r++) {
+                for (int c = 1; c <= 2; c++) {
+                    // Collect the neighborhood index of the cell, most
+                    // significant bit first (see Rule.CENTER)
+                    int neighborhood = 0;
+                    for (int dr = -1; dr <= 1; dr++) {
+                        for (int dc = -1; dc <= 1; dc++) {
+                            neighborhood = (neighborhood << 1) | ((block >>> (4 * (r + dr) + c + dc)) & 1);
+                        }
+                    }
+                    if (rule.next(neighborhood)) {
+                        next |= 1 << (2 * (r - 1) + c - 1);
+                    }
+                }
+            }
+            this.table[block] = (byte) next;
+        }
+        this.rule = rule;
+    }
+}
@@ -0,0 +1,59 @@
+package engine;
+
+import rule.Rule;
+
+/**
+ * NaiveEngine applies the rule one cell at a time by looking up the
+ * neighborhood of every cell in the rule table. It is the reference the
+ * other engines are checked against.
+ */
+public class NaiveEngine implements Engine {
+
+    @Override
+    public void step(long[][] src, long[][] dst, int width, boolean wrap, Rule rule) {
+        for (int y = 0; y < src.length; y++) {
+            for (int x = 0; x < width; x++) {
+                int neighborhood = neighborhood(src, width, wrap, y, x);
+                PackedRows.set(dst[y], x, rule.next(neighborhood));
+            }
+        }
+    }
+
+    /**
+     * neighborhood collects the states of a cell at a given coordinate and of
+     * its Moore neighborhood (8-cell neighborhood) into a neighborhood index
+     * (see Rule.CENTER)
+     *
+     * @return The neighborhood index of the cell
+     */
+    static int neighborhood(long[][] rows, int width, boolean wrap, int y, int x) {
+        int neighborhood = 0;
+
+        int height = rows.length;
+
+        // Iterate over row range of [y-1, y+1] and col range [x-1, x+1]
+        // but don't go out of bounds
+        for (int rowCursor = y - 1; rowCursor <= y + 1; rowCursor++) {
+            for (int colCursor = x - 1; colCursor <= x + 1; colCursor++) {
+                neighborhood <<= 1;
+
+                // Wrap around rows/cols
+                int row = rowCursor;
+                int col = colCursor;
+                if (wrap) {
+                    row = (rowCursor + height) % height;
+                    col = (colCursor + width) % width;
+                }
+                // Check out of bounds in case of wrap == false
+                if (0 <= row &&
+                        row < height &&
+                        0 <= col &&
+                        col < width &&
+                        PackedRows.get(rows[row], col)) {
+                    neighborhood |= 1;
+                }
+            }
+        }
+        return neighborhood;
+    }
+}
@@ -0,0 +1,110 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * PackedRows holds the helpers used to read and write a bit-packed grid. A
+ * packed grid is a long[][] with one long[] per row, where bit (x % 64) of
+ * word (x / 64) holds the living state of the cell in column x. Bits past the
+ * width of the grid in the last word of a row are always 0.
+ */
+public final class PackedRows {
+
+    private PackedRows() {
+    }
+
+    /**
+     * words returns the number of longs needed to hold a row of the given
+     * width
+     */
+    public static int words(int width) {
+        return (width + 63) >>> 6;
+    }
+
+    /**
+     * lastWordMask returns the mask of the bits of the last word of a row
+     * that are inside the grid
+     */
+    public static long lastWordMask(int width) {
+        int used = width & 63;
+        return used == 0 ? -1L : (1L << used) - 1;
+    }
+
+    /**
+     * alloc allocates an empty packed grid
+     */
+    public static long[][] alloc(int height, int width) {
+        return new long[height][words(width)];
+    }
+
+    /**
+     * get returns the state of column x in a packed row
+     */
+    public static boolean get(long[] row, int x) {
+        return (row[x >>> 6] & (1L << x)) != 0;
+    }
+
+    /**
+     * set sets the state of column x in a packed row
+     */
+    public static void set(long[] row, int x, boolean state) {
+        if (state) {
+            row[x >>> 6] |= 1L << x;
+        } else {
+            row[x >>> 6] &= ~(1L << x);
+        }
+    }
+
+    /**
+     * fill sets the cells in columns [from, to) of a packed row to alive, a
+     * word at a time
+     */
+    public static void fill(long[] row, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - ((to - 1) & 63));
+        if (first == last) {
+            row[first] |= firstMask & lastMask;
+            return;
+        }
+        row[first] |= firstMask;
+        Arrays.fill(row, first + 1, last, -1L);
+        row[last] |= lastMask;
+    }
+
+    /**
+     * shift copies a packed row into another moved right by a number of
+     * columns (left if negative), a word at a time. Cells moved outside of
+     * [0, width) of the target are dropped, and a null source is an empty row.
+     */
+    public static void shift(long[] source, int columns, long[] target, int width) {
+        if (source == null) {
+            Arrays.fill(target, 0L);
+            return;
+        }
+        int words = Math.floorDiv(columns, 64);
+        int bits = Math.floorMod(columns, 64);
+        for (int i = 0; i < target.length; i++) {
+            int j = i - words;
+            long word = j >= 0 && j < source.length ? source[j] << bits : 0;
+            if (bits != 0 && j >= 1 && j - 1 < source.length) {
+                word |= source[j - 1] >>> (64 - bits);
+            }
+            target[i] = word;
+        }
+        target[target.length - 1] &= lastWordMask(width);
+    }
+
+    /**
+     * clear sets every cell of a packed grid to dead
+     */
+    public static void clear(long[][] rows) {
+        for (long[] row : rows) {
+            Arrays.fill(row, 0L);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import rule.Rule;
+
+/**
+ * ParallelEngine computes a generation with the SwarEngine kernel on several
+ * cores. The grid is split into horizontal stripes that are computed on a
+ * ForkJoinPool; a stripe only reads the rows of src above and below it (its
+ * halo) and only writes its own rows of dst, and step returns once every
+ * stripe is done, so the result is bit-identical to SwarEngine.
+ */
+public class ParallelEngine implements Engine {
+
+    /**
+     * STRIPES_PER_THREAD splits the grid into more stripes than threads so
+     * that a slow stripe does not hold up the whole generation
+     */
+    private static final int STRIPES_PER_THREAD = 4;
+
+    /**
+     * MIN_STRIPE_HEIGHT is the smallest number of rows worth handing to
+     * another thread
+     */
+    private static final int MIN_STRIPE_HEIGHT = 16;
+
+    private final ForkJoinPool pool;
+    private final int threads;
+
+    /**
+     * @param threads The number of threads to compute generations on
+     */
+    public ParallelEngine(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Must use at least 1 thread, got " + threads);
+        }
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    @Override
+    public void step(long[][] src, long[][] dst, int width, boolean wrap, Rule rule) {
+        int height = src.length;
+        int stripes = Math.max(1, Math.min(this.threads * STRIPES_PER_THREAD, height / MIN_STRIPE_HEIGHT));
+        long[] empty = new long[PackedRows.words(width)];
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(stripes);
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            int top = (int) ((long) stripe * height / stripes);
+            int bottom = (int) ((long) (stripe + 1) * height / stripes);
+            tasks.add(this.pool.submit(() -> {
+                for (int y = top; y < bottom; y++) {
+                    long[] above = y > 0 ? src[y - 1] : (wrap ? src[height - 1] : empty);
+                    long[] below = y < height - 1 ? src[y + 1] : (wrap ? src[0] : empty);
+                    SwarEngine.stepRow(above, src[y], below, dst[y], width, wrap, rule);
+                }
+            }));
+        }
+
+        // Wait for every stripe before the grid swaps its buffers
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package engine;
+
+import rule.Rule;
+
+/**
+ * RuleCircuit is a rule compiled into bitwise operations that apply it to 64
+ * cells at once from the bits of their counts of neighbors (see
+ * SwarEngine.nextWord for the adder network that sums them), so that the
+ * kernels apply any rule in the same pass as they sum the neighbors, without
+ * looking at a single cell.
+ *
+ * Whether a dead cell is born, and whether a living cell's state differs from
+ * a dead one's, are functions of the 3 low bits of the count, each computed
+ * with a tree of multiplexers that picks one of 8 words, set or clear for
+ * each count, by sum0, then sum1, then sum2 (see select). The operations are
+ * the same for every totalistic rule, so the kernels keep the words of the
+ * rule in registers. Rules that use few counts, like Life, are cheaper to
+ * apply one count at a time, matching each of the 3 low bits of the sums to
+ * the count. Either way, 8 is the only count with sum3 set, and its low bits
+ * are those of 0, so it is applied as a correction of count 0.
+ *
+ * Rules that are not totalistic also look at the neighbors themselves for the
+ * counts where some configurations of neighbors lead to a living cell and
+ * others do not. Those list the configurations that do, or those that do not
+ * if they are fewer. Among cells with k neighbors, a configuration of k <= 4
+ * living neighbors is matched by and-ing those neighbors, and one of more by
+ * and-ing its 8 - k dead neighbors, inverted.
+ */
+final class RuleCircuit {
+
+    /**
+     * NEIGHBOR_BITS holds the bit of each neighbor in a neighborhood index
+     * (see Rule.CENTER), in the order of the neighbors passed to apply
+     */
+    private static final int[] NEIGHBOR_BITS = { 1 << 8, 1 << 7, 1 << 6, 1 << 5, 1 << 3, 1 << 2, 1 << 1, 1 };
+
+    /**
+     * last holds the circuit of the last rule compiled, for every thread, as
+     * compiling takes a pass over the rule table
+     */
+    private static volatile RuleCircuit last;
+
+    private final Rule rule;
+
+    /**
+     * born holds for each count below 8 a word with every bit set if dead
+     * cells with the count are born, and differs one with every bit set if
+     * living cells with the count survive unlike dead ones are born, or the
+     * other way around. Both are clear for the counts that depend on the
+     * configuration of the neighbors.
+     */
+    final long[] born = new long[8];
+    final long[] differs = new long[8];
+
+    /**
+     * counts holds the counts below 8 with a set word in born or differs, in
+     * increasing order
+     */
+    final int[] counts;
+
+    /**
+     * fixBorn and fixDiffers correct the cells with 8 neighbors, which the
+     * words of count 0 are applied to
+     */
+    final long fixBorn;
+    final long fixDiffers;
+
+    /**
+     * For each count that depends on the configuration of the neighbors,
+     * partial holds the count, and for its dead cells (slot 2 * i) and living
+     * cells (2 * i + 1): configs[from[slot], to[slot]) are the configurations
+     * listed, none if the next state is the same for all of them, all is
+     * then set if that state is alive, and invert tells whether the
+     * configurations are those that lead to a dead cell. Configuration k
+     * is the run of neighbors [configs[k], configs[k + 1]), indices into the
+     * neighbors passed to apply, xor-ed with negate.
+     */
+    private final int[] partial;
+    private final int[] from;
+    private final int[] to;
+    private final long[] all;
+    private final long[] invert;
+    private final long[] negate;
+    private final int[] configs;
+    private final int[] neighbors;
+
+    private RuleCircuit(Rule rule) {
+        this.rule = rule;
+
+        // Sort the configurations of neighbors by count, and by whether they
+        // lead to a living cell from a dead and a living one
+        int[][][] living = new int[2][9][256];
+        int[][][] dead = new int[2][9][256];
+        int[][] livingCount = new int[2][9];
+        int[][] deadCount = new int[2][9];
+        for (int config = 0; config < 256; config++) {
+            int index = 0;
+            for (int k = 0; k < 8; k++) {
+                if ((config & (1 << k)) != 0) {
+                    index |= NEIGHBOR_BITS[k];
+                }
+            }
+            int count = Integer.bitCount(config);
+            for (int state = 0; state < 2; state++) {
+                if (rule.next(state == 0 ? index : index | Rule.CENTER)) {
+                    living[state][count][livingCount[state][count]++] = config;
+                } else {
+                    dead[state][count][deadCount[state][count]++] = config;
+                }
+            }
+        }
+
+        int partials = 0;
+        int[] partial = new int[8];
+        int[] from = new int[16];
+        int[] to = new int[16];
+        long[] all = new long[16];
+        long[] invert = new long[16];
+        long[] negate = new long[16];
+        int[] configs = new int[513];
+        int[] neighbors = new int[512 * 4];
+        int configCount = 0;
+        int neighborCount = 0;
+        for (int count = 0; count < 8; count++) {
+            boolean depends = false;
+            for (int state = 0; state < 2; state++) {
+                depends |= livingCount[state][count] > 0 && deadCount[state][count] > 0;
+            }
+            if (!depends) {
+                long born = livingCount[0][count] > 0 ? -1L : 0;
+                long survives = livingCount[1][count] > 0 ? -1L : 0;
+                this.born[count] = born;
+                this.differs[count] = born ^ survives;
+                continue;
+            }
+
+            int i = partials++;
+            partial[i] = count;
+            for (int state = 0; state < 2; state++) {
+                int slot = 2 * i + state;
+                from[slot] = configCount;
+                if (livingCount[state][count] > 0 && deadCount[state][count] > 0) {
+                    boolean inverted = deadCount[state][count] < livingCount[state][count];
+                    int[] listed = inverted ? dead[state][count] : living[state][count];
+                    int listedCount = inverted ? deadCount[state][count] : livingCount[state][count];
+                    for (int c = 0; c < listedCount; c++) {
+                        configs[configCount++] = neighborCount;
+                        int matched = count <= 4 ? listed[c] : ~listed[c] & 0xff;
+                        for (int k = 0; k < 8; k++) {
+                            if ((matched & (1 << k)) != 0) {
+                                neighbors[neighborCount++] = k;
+                            }
+                        }
+                    }
+                    configs[configCount] = neighborCount;
+                    invert[slot] = inverted ? -1L : 0;
+                    negate[slot] = count <= 4 ? 0 : -1L;
+                } else if (livingCount[state][count] > 0) {
+                    all[slot] = -1L;
+                }
+                to[slot] = configCount;
+            }
+        }
+
+        long born0 = livingCount[0][0] > 0 ? -1L : 0;
+        long survives0 = livingCount[1][0] > 0 ? -1L : 0;
+        long born8 = livingCount[0][8] > 0 ? -1L : 0;
+        long survives8 = livingCount[1][8] > 0 ? -1L : 0;
+        this.fixBorn = born0 ^ born8;
+        this.fixDiffers = born0 ^ born8 ^ survives0 ^ survives8;
+
+        int used = 0;
+        int[] counts = new int[8];
+        for (int count = 0; count < 8; count++) {
+            if ((this.born[count] | this.differs[count]) != 0) {
+                counts[used++] = count;
+            }
+        }
+        this.counts = new int[used];
+        System.arraycopy(counts, 0, this.counts, 0, used);
+        this.partial = new int[partials];
+        System.arraycopy(partial, 0, this.partial, 0, partials);
+        this.from = from;
+        this.to = to;
+        this.all = all;
+        this.invert = invert;
+        this.negate = negate;
+        this.configs = configs;
+        this.neighbors = neighbors;
+    }
+
+    /**
+     * of returns the circuit of a rule, compiling it unless it is the last
+     * rule compiled
+     */
+    static RuleCircuit of(Rule rule) {
+        RuleCircuit circuit = last;
+        if (circuit == null || (circuit.rule != rule && !circuit.rule.equals(rule))) {
+            circuit = new RuleCircuit(rule);
+            last = circuit;
+        }
+        return circuit;
+    }
+
+    /**
+     * isTotalistic tells whether the next state of the cells only depends on
+     * their counts of neighbors, so that apply does not need the neighbors
+     */
+    boolean isTotalistic() {
+        return this.partial.length == 0;
+    }
+
+    /**
+     * select returns the word of words picked by the 3 low bits of the count
+     * of each cell, with the trees of multiplexers the kernels inline
+     */
+    private static long select(long sum0, long sum1, long sum2, long[] words) {
+        long w01 = words[0] ^ (sum0 & (words[0] ^ words[1]));
+        long w23 = words[2] ^ (sum0 & (words[2] ^ words[3]));
+        long w45 = words[4] ^ (sum0 & (words[4] ^ words[5]));
+        long w67 = words[6] ^ (sum0 & (words[6] ^ words[7]));
+        long w03 = w01 ^ (sum1 & (w01 ^ w23));
+        long w47 = w45 ^ (sum1 & (w45 ^ w67));
+        return w03 ^ (sum2 & (w03 ^ w47));
+    }
+
+    /**
+     * apply returns the next state of 64 cells c from the bits of their
+     * counts of neighbors and their neighbors, in the order nw, n, ne, w, e,
+     * sw, s, se, which are only read for rules that are not totalistic
+     */
+    long apply(long sum0, long sum1, long sum2, long sum3, long c, long[] neighbors) {
+        // The cells with each count are disjoint, so the terms are xor-ed
+        // into the correction of count 8
+        long next = sum3 & (this.fixBorn ^ (c & this.fixDiffers));
+        if (this.counts.length <= 2) {
+            for (int count : this.counts) {
+                next ^= (sum0 ^ ~SwarEngine.bit(count, 0)) & (sum1 ^ ~SwarEngine.bit(count, 1))
+                        & (sum2 ^ ~SwarEngine.bit(count, 2)) & (this.born[count] ^ (c & this.differs[count]));
+            }
+        } else {
+            next ^= select(sum0, sum1, sum2, this.born) ^ (c & select(sum0, sum1, sum2, this.differs));
+        }
+        for (int i = 0; i < this.partial.length; i++) {
+            int count = this.partial[i];
+            long cells = (sum0 ^ ~SwarEngine.bit(count, 0)) & (sum1 ^ ~SwarEngine.bit(count, 1))
+                    & (sum2 ^ ~SwarEngine.bit(count, 2));
+            if (cells == 0) {
+                continue;
+            }
+            long bornCells = match(2 * i, neighbors);
+            long survives = match(2 * i + 1, neighbors);
+            next |= cells & (bornCells ^ (c & (bornCells ^ survives)));
+        }
+        return next;
+    }
+
+    /**
+     * match returns the cells whose neighbors are in one of the
+     * configurations listed for the dead or living cells with a count, or in
+     * none of them if the list is inverted, or all of them or none if the
+     * next state does not depend on the configuration
+     */
+    private long match(int slot, long[] neighbors) {
+        if (this.from[slot] == this.to[slot]) {
+            return this.all[slot];
+        }
+        long negate = this.negate[slot];
+        long matched = 0;
+        for (int k = this.from[slot]; k < this.to[slot]; k++) {
+            long config = -1L;
+            for (int j = this.configs[k]; j < this.configs[k + 1]; j++) {
+                config &= neighbors[this.neighbors[j]] ^ negate;
+            }
+            matched |= config;
+        }
+        return matched ^ this.invert[slot];
+    }
+}
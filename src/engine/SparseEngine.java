@@ -0,0 +1,365 @@
+package engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import rule.Rule;
+
+/**
+ * SparseEngine runs Life on an unbounded plane. The plane is split into
+ * 64x64 chunks stored in a hash map keyed by chunk coordinate; a chunk is
+ * allocated when activity reaches it and freed as soon as it is empty, so
+ * memory scales with the living area rather than with the size of the grid.
+ *
+ * The grid is a window onto the plane, with its top left corner at the
+ * origin of the plane. Cells that leave the window keep living on the plane
+ * and can come back later. Edits to the grid are copied onto the plane
+ * before the next step, and the wrap setting of the grid is ignored.
+ */
+public class SparseEngine implements Engine {
+
+    /**
+     * CHUNK_SIZE is the side of a chunk in number of cells. A chunk holds one
+     * word per row.
+     */
+    private static final int CHUNK_SIZE = 64;
+
+    /**
+     * chunks holds the non-empty chunks of the plane. Each chunk is an array
+     * of CHUNK_SIZE words, one per row.
+     */
+    private HashMap<Long, long[]> chunks = new HashMap<Long, long[]>();
+
+    /**
+     * changed holds the keys of the chunks that changed in the last step
+     */
+    private Set<Long> changed = new HashSet<Long>();
+
+    /**
+     * previous holds the keys of the chunks that changed in the step before
+     * the last, and edited those of the chunks edited since the last step
+     */
+    private Set<Long> previous = new HashSet<Long>();
+    private final Set<Long> edited = new HashSet<Long>();
+
+    /**
+     * touched holds the cells of the grid edited since the last step, as
+     * pairs of y and x
+     */
+    private List<int[]> touched = new ArrayList<int[]>();
+
+    /**
+     * candidates, spare and free are reused across steps: the chunks that
+     * may be alive in the next generation, the map the next generation is
+     * written to, and the chunk arrays no longer in use
+     */
+    private final Set<Long> candidates = new HashSet<Long>();
+    private HashMap<Long, long[]> spare = new HashMap<Long, long[]>();
+    private final ArrayDeque<long[]> free = new ArrayDeque<long[]>();
+
+    /**
+     * reimport is set when the whole window has to be copied onto the plane
+     * before the next step
+     */
+    private boolean reimport = true;
+
+    /**
+     * cleared is set when the whole plane has to be cleared before the next
+     * step
+     */
+    private boolean cleared = false;
+
+    // Scratch rows passed to the swar kernel: the west, center and east word
+    // of the rows above, at and below a row of a chunk
+    private final long[] above = new long[3];
+    private final long[] row = new long[3];
+    private final long[] below = new long[3];
+
+    /**
+     * scratch holds a chunk being stepped, until it is known not to be empty
+     */
+    private final long[] scratch = new long[CHUNK_SIZE];
+
+    @Override
+    public void step(long[][] src, long[][] dst, int width, boolean wrap, Rule rule) {
+        boolean exportAll = this.reimport;
+        importWindow(src, width);
+
+        // Every chunk that is alive or next to a living chunk may be alive in
+        // the next generation
+        this.candidates.clear();
+        for (long key : this.chunks.keySet()) {
+            int cy = chunkY(key);
+            int cx = chunkX(key);
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    this.candidates.add(key(cy + dy, cx + dx));
+                }
+            }
+        }
+
+        // The chunks that changed in the last step are kept, dst holds the
+        // generation before it
+        Set<Long> changedBefore = this.previous;
+        this.previous = this.changed;
+        this.changed = changedBefore;
+        this.changed.clear();
+
+        HashMap<Long, long[]> next = this.spare;
+        for (long key : this.candidates) {
+            long[] chunk = stepChunk(chunkY(key), chunkX(key), rule);
+            long[] previous = this.chunks.get(key);
+            if (chunk != null) {
+                next.put(key, chunk);
+            }
+            if (!sameChunk(chunk, previous)) {
+                this.changed.add(key);
+            }
+        }
+
+        // The chunks of the last generation are recycled
+        this.free.addAll(this.chunks.values());
+        this.chunks.clear();
+        this.spare = this.chunks;
+        this.chunks = next;
+
+        if (exportAll) {
+            exportWindow(dst, width);
+        } else {
+            // dst is two generations behind, plus the edits since, so only
+            // the chunks that changed in either step or were edited differ
+            this.previous.addAll(this.edited);
+            this.previous.addAll(this.changed);
+            for (long key : this.previous) {
+                exportChunk(dst, width, key);
+            }
+        }
+        this.edited.clear();
+    }
+
+    /**
+     * getPopulation returns the number of living cells on the whole plane
+     */
+    public long getPopulation() {
+        long population = 0;
+        for (long[] chunk : this.chunks.values()) {
+            for (long word : chunk) {
+                population += Long.bitCount(word);
+            }
+        }
+        return population;
+    }
+
+    /**
+     * getChunkCount returns the number of chunks allocated on the plane
+     */
+    public int getChunkCount() {
+        return this.chunks.size();
+    }
+
+    @Override
+    public boolean tileChanged(int tileRow, int word) {
+        return this.changed.contains(key(tileRow, word));
+    }
+
+    @Override
+    public void touch(int y, int x) {
+        this.touched.add(new int[] { y, x });
+    }
+
+    @Override
+    public void reset() {
+        this.reimport = true;
+    }
+
+    @Override
+    public void clear() {
+        this.cleared = true;
+        this.reimport = true;
+    }
+
+    /**
+     * stepChunk computes the next state of a chunk, or returns null if the
+     * chunk is empty in the next generation
+     */
+    private long[] stepChunk(int cy, int cx, Rule rule) {
+        long[] n = this.chunks.get(key(cy - 1, cx));
+        long[] nw = this.chunks.get(key(cy - 1, cx - 1));
+        long[] ne = this.chunks.get(key(cy - 1, cx + 1));
+        long[] w = this.chunks.get(key(cy, cx - 1));
+        long[] c = this.chunks.get(key(cy, cx));
+        long[] e = this.chunks.get(key(cy, cx + 1));
+        long[] s = this.chunks.get(key(cy + 1, cx));
+        long[] sw = this.chunks.get(key(cy + 1, cx - 1));
+        long[] se = this.chunks.get(key(cy + 1, cx + 1));
+
+        long[] result = this.scratch;
+        long any = 0;
+        for (int y = 0; y < CHUNK_SIZE; y++) {
+            // Gather the three words around the row from the chunk and its
+            // neighbors, taking rows above and below from the chunks above
+            // and below at the chunk edges
+            if (y > 0) {
+                fill(this.above, w, c, e, y - 1);
+            } else {
+                fill(this.above, nw, n, ne, CHUNK_SIZE - 1);
+            }
+            fill(this.row, w, c, e, y);
+            if (y < CHUNK_SIZE - 1) {
+                fill(this.below, w, c, e, y + 1);
+            } else {
+                fill(this.below, sw, s, se, 0);
+            }
+
+            long word = SwarEngine.stepWord(this.above, this.row, this.below, 1, 3 * CHUNK_SIZE, false, rule);
+            result[y] = word;
+            any |= word;
+        }
+        if (any == 0) {
+            return null;
+        }
+        long[] chunk = this.free.isEmpty() ? new long[CHUNK_SIZE] : this.free.pop();
+        System.arraycopy(result, 0, chunk, 0, CHUNK_SIZE);
+        return chunk;
+    }
+
+    /**
+     * fill sets the three words of a scratch row from row y of three side by
+     * side chunks, any of which may be missing
+     */
+    private static void fill(long[] words, long[] west, long[] center, long[] east, int y) {
+        words[0] = west == null ? 0 : west[y];
+        words[1] = center == null ? 0 : center[y];
+        words[2] = east == null ? 0 : east[y];
+    }
+
+    /**
+     * importWindow copies the edits made to the grid onto the plane
+     */
+    private void importWindow(long[][] src, int width) {
+        if (this.cleared) {
+            this.chunks.clear();
+            this.cleared = false;
+        }
+
+        if (this.reimport) {
+            int words = PackedRows.words(width);
+            long lastMask = PackedRows.lastWordMask(width);
+            for (int y = 0; y < src.length; y++) {
+                for (int i = 0; i < words; i++) {
+                    // Only the bits of the last word inside the grid belong
+                    // to the window, the rest of the plane is kept
+                    long mask = i == words - 1 ? lastMask : -1L;
+                    setWord(y, i, (getWord(y, i) & ~mask) | (src[y][i] & mask));
+                }
+            }
+        } else {
+            for (int[] cell : this.touched) {
+                int y = cell[0];
+                int x = cell[1];
+                long bit = 1L << x;
+                long word = getWord(y, x >>> 6);
+                setWord(y, x >>> 6, PackedRows.get(src[y], x) ? word | bit : word & ~bit);
+                this.edited.add(key(Math.floorDiv(y, CHUNK_SIZE), x >>> 6));
+            }
+        }
+
+        this.reimport = false;
+        this.touched.clear();
+    }
+
+    /**
+     * exportWindow copies the window of the plane into the grid
+     */
+    private void exportWindow(long[][] dst, int width) {
+        int words = PackedRows.words(width);
+        long lastMask = PackedRows.lastWordMask(width);
+        for (int y = 0; y < dst.length; y++) {
+            for (int i = 0; i < words; i++) {
+                long word = getWord(y, i);
+                dst[y][i] = i == words - 1 ? word & lastMask : word;
+            }
+        }
+    }
+
+    /**
+     * exportChunk copies the rows of a chunk that are inside the window into
+     * the grid
+     */
+    private void exportChunk(long[][] dst, int width, long key) {
+        int cy = chunkY(key);
+        int i = chunkX(key);
+        int words = PackedRows.words(width);
+        if (cy < 0 || i < 0 || i >= words || (long) cy * CHUNK_SIZE >= dst.length) {
+            return;
+        }
+        long mask = i == words - 1 ? PackedRows.lastWordMask(width) : -1L;
+        long[] chunk = this.chunks.get(key);
+        int top = cy * CHUNK_SIZE;
+        int bottom = Math.min(dst.length, top + CHUNK_SIZE);
+        for (int y = top; y < bottom; y++) {
+            dst[y][i] = chunk == null ? 0 : chunk[y - top] & mask;
+        }
+    }
+
+    /**
+     * getWord returns word i of row y of the plane
+     */
+    private long getWord(int y, int i) {
+        long[] chunk = this.chunks.get(key(Math.floorDiv(y, CHUNK_SIZE), i));
+        return chunk == null ? 0 : chunk[Math.floorMod(y, CHUNK_SIZE)];
+    }
+
+    /**
+     * setWord sets word i of row y of the plane, allocating or freeing its
+     * chunk as needed
+     */
+    private void setWord(int y, int i, long word) {
+        long key = key(Math.floorDiv(y, CHUNK_SIZE), i);
+        long[] chunk = this.chunks.get(key);
+        if (chunk == null) {
+            if (word == 0) {
+                return;
+            }
+            chunk = new long[CHUNK_SIZE];
+            this.chunks.put(key, chunk);
+        }
+        chunk[Math.floorMod(y, CHUNK_SIZE)] = word;
+        if (word == 0 && isEmpty(chunk)) {
+            this.chunks.remove(key);
+        }
+    }
+
+    private static boolean isEmpty(long[] chunk) {
+        for (long word : chunk) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameChunk(long[] a, long[] b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return Arrays.equals(a, b);
+    }
+
+    private static long key(int cy, int cx) {
+        return ((long) cy << 32) | (cx & 0xffffffffL);
+    }
+
+    private static int chunkY(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int chunkX(long key) {
+        return (int) key;
+    }
+}
@@ -0,0 +1,264 @@
+package engine;
+
+import rule.Rule;
+
+/**
+ * SwarEngine computes the next generation 64 cells at a time. Each word of a
+ * row is combined with its neighbor words using bitwise half and full adders,
+ * so the 8 neighbor counts of 64 cells are summed in parallel without ever
+ * looking at a single cell (SIMD within a register). The rule is compiled into
+ * bitwise operations on the sums (see RuleCircuit), which for rules that are
+ * not totalistic also match the configurations of neighbors they depend on.
+ */
+public class SwarEngine implements Engine {
+
+    /**
+     * NEIGHBORS holds the neighbors of the word being computed for rules that
+     * are not totalistic, for each thread computing rows
+     */
+    private static final ThreadLocal<long[]> NEIGHBORS = ThreadLocal.withInitial(() -> new long[8]);
+
+    @Override
+    public void step(long[][] src, long[][] dst, int width, boolean wrap, Rule rule) {
+        int height = src.length;
+        long[] empty = new long[PackedRows.words(width)];
+
+        for (int y = 0; y < height; y++) {
+            long[] above = y > 0 ? src[y - 1] : (wrap ? src[height - 1] : empty);
+            long[] below = y < height - 1 ? src[y + 1] : (wrap ? src[0] : empty);
+            stepRow(above, src[y], below, dst[y], width, wrap, rule);
+        }
+    }
+
+    /**
+     * stepRow computes the next state of a single packed row from the row
+     * itself and the rows directly above and below it. Rows outside of a
+     * non-wrapping grid are passed in as all-zero rows. It is also used to
+     * evolve grids that are not stored as a long[][], see World.
+     */
+    public static void stepRow(long[] above, long[] row, long[] below, long[] out, int width, boolean wrap, Rule rule) {
+        int last = row.length - 1;
+        RuleCircuit circuit = RuleCircuit.of(rule);
+        if (!circuit.isTotalistic() || last < 2) {
+            for (int i = 0; i <= last; i++) {
+                out[i] = stepWord(above, row, below, i, width, wrap, circuit);
+            }
+            return;
+        }
+
+        // The rule is applied to the sums while they are still in registers.
+        // A rule with at most two counts below 8 is applied one count at a
+        // time, padded with a count no cell takes a next state from. Others
+        // go through the trees of multiplexers of RuleCircuit.select,
+        // inlined, with each pair of counts given as the word of the even
+        // count and what flips it to the word of the odd one. Only the words
+        // at the edges of the row need the wrapping and masking of stepWord.
+        int[] counts = circuit.counts;
+        long[] born = circuit.born;
+        long[] differs = circuit.differs;
+        boolean few = counts.length <= 2;
+        int first = counts.length > 0 ? counts[0] : 0;
+        int second = counts.length > 1 ? counts[1] : first;
+        long firstFlip0 = ~bit(first, 0);
+        long firstFlip1 = ~bit(first, 1);
+        long firstFlip2 = ~bit(first, 2);
+        long firstBorn = born[first];
+        long firstDiffers = differs[first];
+        long secondFlip0 = ~bit(second, 0);
+        long secondFlip1 = ~bit(second, 1);
+        long secondFlip2 = ~bit(second, 2);
+        long secondBorn = second != first ? born[second] : 0;
+        long secondDiffers = second != first ? differs[second] : 0;
+
+        long born0 = born[0];
+        long born1 = born[0] ^ born[1];
+        long born2 = born[2];
+        long born3 = born[2] ^ born[3];
+        long born4 = born[4];
+        long born5 = born[4] ^ born[5];
+        long born6 = born[6];
+        long born7 = born[6] ^ born[7];
+        long differs0 = differs[0];
+        long differs1 = differs[0] ^ differs[1];
+        long differs2 = differs[2];
+        long differs3 = differs[2] ^ differs[3];
+        long differs4 = differs[4];
+        long differs5 = differs[4] ^ differs[5];
+        long differs6 = differs[6];
+        long differs7 = differs[6] ^ differs[7];
+
+        long fixBorn = circuit.fixBorn;
+        long fixDiffers = circuit.fixDiffers;
+        boolean fix = (fixBorn | fixDiffers) != 0;
+        for (int i = 1; i < last; i++) {
+            long a = above[i];
+            long c = row[i];
+            long b = below[i];
+            long nw = (a << 1) | (above[i - 1] >>> 63);
+            long ne = (a >>> 1) | (above[i + 1] << 63);
+            long w = (c << 1) | (row[i - 1] >>> 63);
+            long e = (c >>> 1) | (row[i + 1] << 63);
+            long sw = (b << 1) | (below[i - 1] >>> 63);
+            long se = (b >>> 1) | (below[i + 1] << 63);
+
+            // Same adder network as nextWord
+            long n0 = nw ^ a ^ ne;
+            long n1 = (nw & a) | (ne & (nw ^ a));
+            long s0 = sw ^ b ^ se;
+            long s1 = (sw & b) | (se & (sw ^ b));
+            long m0 = w ^ e;
+            long m1 = w & e;
+            long t0 = n0 ^ s0;
+            long carry0 = n0 & s0;
+            long t1 = n1 ^ s1 ^ carry0;
+            long t2 = (n1 & s1) | (carry0 & (n1 ^ s1));
+            long carry1 = t0 & m0;
+            long carry2 = (t1 & m1) | (carry1 & (t1 ^ m1));
+            long sum0 = t0 ^ m0;
+            long sum1 = t1 ^ m1 ^ carry1;
+            long sum2 = t2 ^ carry2;
+
+            long next;
+            if (few) {
+                next = (sum0 ^ firstFlip0) & (sum1 ^ firstFlip1) & (sum2 ^ firstFlip2)
+                        & (firstBorn ^ (c & firstDiffers));
+                next |= (sum0 ^ secondFlip0) & (sum1 ^ secondFlip1) & (sum2 ^ secondFlip2)
+                        & (secondBorn ^ (c & secondDiffers));
+            } else {
+                long born01 = born0 ^ (sum0 & born1);
+                long born23 = born2 ^ (sum0 & born3);
+                long born45 = born4 ^ (sum0 & born5);
+                long born67 = born6 ^ (sum0 & born7);
+                long born03 = born01 ^ (sum1 & (born01 ^ born23));
+                long born47 = born45 ^ (sum1 & (born45 ^ born67));
+                long differs01 = differs0 ^ (sum0 & differs1);
+                long differs23 = differs2 ^ (sum0 & differs3);
+                long differs45 = differs4 ^ (sum0 & differs5);
+                long differs67 = differs6 ^ (sum0 & differs7);
+                long differs03 = differs01 ^ (sum1 & (differs01 ^ differs23));
+                long differs47 = differs45 ^ (sum1 & (differs45 ^ differs67));
+                next = born03 ^ (sum2 & (born03 ^ born47))
+                        ^ (c & (differs03 ^ (sum2 & (differs03 ^ differs47))));
+            }
+            if (fix) {
+                long sum3 = t2 & carry2;
+                next ^= sum3 & (fixBorn ^ (c & fixDiffers));
+            }
+            out[i] = next;
+        }
+        out[0] = stepWord(above, row, below, 0, width, wrap, circuit);
+        out[last] = stepWord(above, row, below, last, width, wrap, circuit);
+    }
+
+    /**
+     * stepWord computes the next state of word i of a packed row from the row
+     * itself and the rows directly above and below it
+     */
+    static long stepWord(long[] above, long[] row, long[] below, int i, int width, boolean wrap, Rule rule) {
+        return stepWord(above, row, below, i, width, wrap, RuleCircuit.of(rule));
+    }
+
+    /**
+     * stepWord computes word i of a packed row like stepWord with a rule,
+     * with the rule already compiled
+     */
+    static long stepWord(long[] above, long[] row, long[] below, int i, int width, boolean wrap,
+            RuleCircuit circuit) {
+        int last = row.length - 1;
+        // Bit of the last word holding the rightmost column
+        int lastBit = (width - 1) & 63;
+
+        long a = above[i];
+        long c = row[i];
+        long b = below[i];
+
+        // The west neighbor of a column comes from the top bit of the
+        // previous word, the east neighbor from the bottom bit of the next
+        // word. At the edges of the grid these wrap around or are dead.
+        long aWest, cWest, bWest, aEast, cEast, bEast;
+        if (i > 0) {
+            aWest = above[i - 1] >>> 63;
+            cWest = row[i - 1] >>> 63;
+            bWest = below[i - 1] >>> 63;
+        } else if (wrap) {
+            aWest = (above[last] >>> lastBit) & 1;
+            cWest = (row[last] >>> lastBit) & 1;
+            bWest = (below[last] >>> lastBit) & 1;
+        } else {
+            aWest = cWest = bWest = 0;
+        }
+        if (i < last) {
+            aEast = above[i + 1] << 63;
+            cEast = row[i + 1] << 63;
+            bEast = below[i + 1] << 63;
+        } else if (wrap) {
+            aEast = (above[0] & 1) << lastBit;
+            cEast = (row[0] & 1) << lastBit;
+            bEast = (below[0] & 1) << lastBit;
+        } else {
+            aEast = cEast = bEast = 0;
+        }
+
+        long next = nextWord(
+                (a << 1) | aWest, a, (a >>> 1) | aEast,
+                (c << 1) | cWest, c, (c >>> 1) | cEast,
+                (b << 1) | bWest, b, (b >>> 1) | bEast,
+                circuit);
+
+        return i < last ? next : next & PackedRows.lastWordMask(width);
+    }
+
+    /**
+     * nextWord applies a compiled rule to 64 cells at once. Each argument
+     * holds one of the 9 cells of the Moore neighborhood of each of the 64
+     * cells, e.g. nw holds the north-west neighbors and c holds the cells
+     * themselves.
+     */
+    static long nextWord(long nw, long n, long ne, long w, long c, long e, long sw, long s, long se,
+            RuleCircuit circuit) {
+        // Sum each row of the neighborhood. The row above and below have 3
+        // neighbors each (full adder), the middle row has 2 (half adder).
+        long n0 = nw ^ n ^ ne;
+        long n1 = (nw & n) | (ne & (nw ^ n));
+        long s0 = sw ^ s ^ se;
+        long s1 = (sw & s) | (se & (sw ^ s));
+        long m0 = w ^ e;
+        long m1 = w & e;
+
+        // Add the upper and lower rows into t (0..6)
+        long t0 = n0 ^ s0;
+        long carry0 = n0 & s0;
+        long t1 = n1 ^ s1 ^ carry0;
+        long t2 = (n1 & s1) | (carry0 & (n1 ^ s1));
+
+        // Add the middle row into the count (0..8)
+        long sum0 = t0 ^ m0;
+        long carry1 = t0 & m0;
+        long sum1 = t1 ^ m1 ^ carry1;
+        long carry2 = (t1 & m1) | (carry1 & (t1 ^ m1));
+        long sum2 = t2 ^ carry2;
+        long sum3 = t2 & carry2;
+
+        long[] neighbors = null;
+        if (!circuit.isTotalistic()) {
+            neighbors = NEIGHBORS.get();
+            neighbors[0] = nw;
+            neighbors[1] = n;
+            neighbors[2] = ne;
+            neighbors[3] = w;
+            neighbors[4] = e;
+            neighbors[5] = sw;
+            neighbors[6] = s;
+            neighbors[7] = se;
+        }
+        return circuit.apply(sum0, sum1, sum2, sum3, c, neighbors);
+    }
+
+    /**
+     * bit returns a word with every bit set if bit i of bits is set, and
+     * no bit set otherwise
+     */
+    static long bit(int bits, int i) {
+        return -(long) ((bits >>> i) & 1);
+    }
+}
@@ -0,0 +1,170 @@
+package engine;
+
+import rule.Rule;
+
+/**
+ * TemporalBlocking advances a bit-packed grid by many generations with the
+ * swar kernel (see SwarEngine.stepRow), blocked in time as well as in space,
+ * for grids too large to stay in the cache between generations. Evolving the
+ * whole grid once per generation streams it through memory every time;
+ * instead, the grid is cut into bands of rows, and each band is copied along
+ * with a halo of depth rows on both sides into a small window that fits in
+ * the cache, then advanced depth generations there before being written back.
+ *
+ * A generation loses the outermost row of the window on each side that is
+ * not an edge of the grid, as it depends on rows outside of the window, so
+ * after depth generations exactly the rows of the band are left. The rows
+ * computed in each generation form a trapezoid, and neighboring trapezoids
+ * overlap by their halos, which are computed twice. Bands are written back in
+ * place from top to bottom, so the rows of a band that the halo of the next
+ * band still needs are kept as they were, as are the first rows of the grid
+ * for the halo of the last band when the cells wrap around.
+ */
+public class TemporalBlocking implements FastForward {
+
+    /**
+     * DEFAULT_DEPTH is the number of generations a band is advanced by at
+     * once unless stated otherwise
+     */
+    public static final int DEFAULT_DEPTH = 8;
+
+    /**
+     * CACHE_BYTES is the size the two rows windows of a band are made to
+     * fit in when the number of rows of a band is not stated, half of a
+     * typical L2 cache
+     */
+    private static final int CACHE_BYTES = 512 * 1024;
+
+    private final int rows;
+    private final int depth;
+
+    public TemporalBlocking() {
+        this(0, DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param rows  The number of rows of a band, or 0 to fit the windows of a
+     *              band in CACHE_BYTES
+     * @param depth The number of generations a band is advanced by at once
+     */
+    public TemporalBlocking(int rows, int depth) {
+        if (rows < 0 || depth < 1) {
+            throw new IllegalArgumentException("Band rows must not be negative and depth must be positive");
+        }
+        this.rows = rows;
+        this.depth = depth;
+    }
+
+    @Override
+    public void advance(long[][] cells, int width, boolean wrap, Rule rule, long generations) {
+        while (generations > 0) {
+            int depth = (int) Math.min(this.depth, generations);
+            pass(cells, width, wrap, rule, depth);
+            generations -= depth;
+        }
+    }
+
+    /**
+     * bandRows returns the number of rows of a band for a grid and a depth
+     */
+    private int bandRows(int height, int words, int depth) {
+        int rows = this.rows;
+        if (rows == 0) {
+            rows = Math.max(depth, CACHE_BYTES / (2 * words * Long.BYTES) - 2 * depth);
+        }
+        return Math.min(rows, height);
+    }
+
+    /**
+     * pass advances every band of the grid by depth generations
+     */
+    private void pass(long[][] cells, int width, boolean wrap, Rule rule, int depth) {
+        int height = cells.length;
+        int words = PackedRows.words(width);
+        int rows = bandRows(height, words, depth);
+
+        // A grid that wraps and is barely larger than a band is evolved as a
+        // whole, its halos would overlap the other bands
+        if (rows == height || (wrap && height < rows + 3 * depth)) {
+            evolveWhole(cells, width, wrap, rule, depth);
+            return;
+        }
+
+        long[] empty = new long[words];
+        long[][] window = new long[rows + 2 * depth][words];
+        long[][] next = new long[rows + 2 * depth][words];
+
+        // kept holds the rows above the band as they were before their band
+        // was written back, at index row % depth, and first the first rows
+        // of the grid for the halo of the last band
+        long[][] kept = new long[depth][words];
+        long[][] first = new long[wrap ? depth : 0][];
+        for (int y = 0; y < first.length; y++) {
+            first[y] = cells[y].clone();
+        }
+
+        for (int top = 0; top < height; top += rows) {
+            int bottom = Math.min(top + rows, height);
+
+            // Copy the band and its halo into the window. The window starts
+            // and ends at the edges of a grid that does not wrap.
+            int start = wrap ? top - depth : Math.max(0, top - depth);
+            int end = wrap ? bottom + depth : Math.min(height, bottom + depth);
+            for (int y = start; y < end; y++) {
+                long[] row;
+                if (y >= top) {
+                    row = y < height ? cells[y] : first[y - height];
+                } else {
+                    row = y >= 0 ? kept[y % depth] : cells[y + height];
+                }
+                System.arraycopy(row, 0, window[y - start], 0, words);
+            }
+
+            // Advance the window, losing a row on each side that is not an
+            // edge of the grid every generation
+            boolean topEdge = start == 0 && !wrap;
+            boolean bottomEdge = end == height && !wrap;
+            int size = end - start;
+            for (int g = 1; g <= depth; g++) {
+                int from = topEdge ? 0 : g;
+                int to = bottomEdge ? size : size - g;
+                for (int y = from; y < to; y++) {
+                    long[] above = y > 0 ? window[y - 1] : empty;
+                    long[] below = y < size - 1 ? window[y + 1] : empty;
+                    SwarEngine.stepRow(above, window[y], below, next[y], width, wrap, rule);
+                }
+                long[][] swap = window;
+                window = next;
+                next = swap;
+            }
+
+            // Keep the last rows of the band as they were, then write it back
+            for (int y = Math.max(top, bottom - depth); y < bottom; y++) {
+                System.arraycopy(cells[y], 0, kept[y % depth], 0, words);
+            }
+            for (int y = top; y < bottom; y++) {
+                System.arraycopy(window[y - start], 0, cells[y], 0, words);
+            }
+        }
+    }
+
+    /**
+     * evolveWhole advances a whole grid generation by generation
+     */
+    private static void evolveWhole(long[][] cells, int width, boolean wrap, Rule rule, int generations) {
+        SwarEngine swar = new SwarEngine();
+        long[][] src = cells;
+        long[][] dst = new long[cells.length][PackedRows.words(width)];
+        for (int g = 0; g < generations; g++) {
+            swar.step(src, dst, width, wrap, rule);
+            long[][] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != cells) {
+            for (int y = 0; y < cells.length; y++) {
+                System.arraycopy(src[y], 0, cells[y], 0, src[y].length);
+            }
+        }
+    }
+}
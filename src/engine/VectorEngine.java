@@ -0,0 +1,178 @@
+package engine;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import rule.Rule;
+
+/**
+ * VectorEngine computes generations with the same bitwise adders as
+ * SwarEngine, but on whole vectors of words at once using the JDK Vector
+ * API, so with 512-bit vectors each instruction works on 512 cells. The
+ * vector size is the preferred species of the JVM it runs on. The words at
+ * the edges of a row go through the scalar SwarEngine kernel, as do whole
+ * rows for rules that are not totalistic.
+ *
+ * This class needs the jdk.incubator.vector module; Engine.forName falls
+ * back to SwarEngine when it is not available.
+ */
+public class VectorEngine implements Engine {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public void step(long[][] src, long[][] dst, int width, boolean wrap, Rule rule) {
+        int height = src.length;
+        long[] empty = new long[PackedRows.words(width)];
+        RuleCircuit circuit = RuleCircuit.of(rule);
+
+        for (int y = 0; y < height; y++) {
+            long[] above = y > 0 ? src[y - 1] : (wrap ? src[height - 1] : empty);
+            long[] below = y < height - 1 ? src[y + 1] : (wrap ? src[0] : empty);
+            if (circuit.isTotalistic()) {
+                stepRow(above, src[y], below, dst[y], width, wrap, circuit);
+            } else {
+                SwarEngine.stepRow(above, src[y], below, dst[y], width, wrap, rule);
+            }
+        }
+    }
+
+    /**
+     * getLanes returns the number of words computed per vector
+     */
+    public static int getLanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * stepRow computes the next state of a single packed row from the row
+     * itself and the rows directly above and below it, for a totalistic rule.
+     * Words [i, i + lanes) only need the words [i - 1, i + lanes] for their
+     * neighbors, which are all inside the row. See SwarEngine.nextWord for
+     * the adder network; the rule is applied to the sums in the same pass,
+     * while they are still in registers.
+     */
+    static void stepRow(long[] above, long[] row, long[] below, long[] out, int width, boolean wrap,
+            RuleCircuit circuit) {
+        int last = row.length - 1;
+        int lanes = SPECIES.length();
+
+        // The first and last words need the other end of the row for their
+        // neighbors, so they go through the scalar kernel, as do rows too
+        // narrow for a vector in between
+        out[0] = SwarEngine.stepWord(above, row, below, 0, width, wrap, circuit);
+        out[last] = SwarEngine.stepWord(above, row, below, last, width, wrap, circuit);
+        if (last <= lanes) {
+            for (int i = 1; i < last; i++) {
+                out[i] = SwarEngine.stepWord(above, row, below, i, width, wrap, circuit);
+            }
+            return;
+        }
+
+        // The words of the rule for the trees of multiplexers of
+        // RuleCircuit.select, each pair of counts as the word of the even
+        // count and what flips it to the word of the odd one
+        long[] born = circuit.born;
+        long[] differs = circuit.differs;
+        long born0 = born[0];
+        long born1 = born[0] ^ born[1];
+        long born2 = born[2];
+        long born3 = born[2] ^ born[3];
+        long born4 = born[4];
+        long born5 = born[4] ^ born[5];
+        long born6 = born[6];
+        long born7 = born[6] ^ born[7];
+        long differs0 = differs[0];
+        long differs1 = differs[0] ^ differs[1];
+        long differs2 = differs[2];
+        long differs3 = differs[2] ^ differs[3];
+        long differs4 = differs[4];
+        long differs5 = differs[4] ^ differs[5];
+        long differs6 = differs[6];
+        long differs7 = differs[6] ^ differs[7];
+        long fixBorn = circuit.fixBorn;
+        long fixDiffers = circuit.fixDiffers;
+
+        // The last vector ends at the last word, overlapping the one before
+        // it unless the words in between fill whole vectors
+        for (int start = 1; start < last; start += lanes) {
+            int i = Math.min(start, last - lanes);
+            LongVector n = LongVector.fromArray(SPECIES, above, i);
+            LongVector c = LongVector.fromArray(SPECIES, row, i);
+            LongVector s = LongVector.fromArray(SPECIES, below, i);
+
+            // The west neighbors come from the word before, the east
+            // neighbors from the word after
+            LongVector nw = west(n, above, i);
+            LongVector ne = east(n, above, i);
+            LongVector w = west(c, row, i);
+            LongVector e = east(c, row, i);
+            LongVector sw = west(s, below, i);
+            LongVector se = east(s, below, i);
+
+            LongVector n0 = nw.lanewise(VectorOperators.XOR, n).lanewise(VectorOperators.XOR, ne);
+            LongVector n1 = nw.and(n).or(ne.and(nw.lanewise(VectorOperators.XOR, n)));
+            LongVector s0 = sw.lanewise(VectorOperators.XOR, s).lanewise(VectorOperators.XOR, se);
+            LongVector s1 = sw.and(s).or(se.and(sw.lanewise(VectorOperators.XOR, s)));
+            LongVector m0 = w.lanewise(VectorOperators.XOR, e);
+            LongVector m1 = w.and(e);
+
+            LongVector t0 = n0.lanewise(VectorOperators.XOR, s0);
+            LongVector carry0 = n0.and(s0);
+            LongVector t1 = n1.lanewise(VectorOperators.XOR, s1).lanewise(VectorOperators.XOR, carry0);
+            LongVector t2 = n1.and(s1).or(carry0.and(n1.lanewise(VectorOperators.XOR, s1)));
+
+            LongVector carry1 = t0.and(m0);
+            LongVector carry2 = t1.and(m1).or(carry1.and(t1.lanewise(VectorOperators.XOR, m1)));
+            LongVector sum0 = t0.lanewise(VectorOperators.XOR, m0);
+            LongVector sum1 = t1.lanewise(VectorOperators.XOR, m1).lanewise(VectorOperators.XOR, carry1);
+            LongVector sum2 = t2.lanewise(VectorOperators.XOR, carry2);
+            LongVector sum3 = t2.and(carry2);
+
+            // The trees of multiplexers of RuleCircuit.select, inlined
+            LongVector born01 = sum0.and(born1).lanewise(VectorOperators.XOR, born0);
+            LongVector born23 = sum0.and(born3).lanewise(VectorOperators.XOR, born2);
+            LongVector born45 = sum0.and(born5).lanewise(VectorOperators.XOR, born4);
+            LongVector born67 = sum0.and(born7).lanewise(VectorOperators.XOR, born6);
+            LongVector born03 = born01.lanewise(VectorOperators.XOR,
+                    sum1.and(born01.lanewise(VectorOperators.XOR, born23)));
+            LongVector born47 = born45.lanewise(VectorOperators.XOR,
+                    sum1.and(born45.lanewise(VectorOperators.XOR, born67)));
+            LongVector bornCells = born03.lanewise(VectorOperators.XOR,
+                    sum2.and(born03.lanewise(VectorOperators.XOR, born47)));
+            LongVector differs01 = sum0.and(differs1).lanewise(VectorOperators.XOR, differs0);
+            LongVector differs23 = sum0.and(differs3).lanewise(VectorOperators.XOR, differs2);
+            LongVector differs45 = sum0.and(differs5).lanewise(VectorOperators.XOR, differs4);
+            LongVector differs67 = sum0.and(differs7).lanewise(VectorOperators.XOR, differs6);
+            LongVector differs03 = differs01.lanewise(VectorOperators.XOR,
+                    sum1.and(differs01.lanewise(VectorOperators.XOR, differs23)));
+            LongVector differs47 = differs45.lanewise(VectorOperators.XOR,
+                    sum1.and(differs45.lanewise(VectorOperators.XOR, differs67)));
+            LongVector differsCells = differs03.lanewise(VectorOperators.XOR,
+                    sum2.and(differs03.lanewise(VectorOperators.XOR, differs47)));
+
+            LongVector fix = sum3.and(c.and(fixDiffers).lanewise(VectorOperators.XOR, fixBorn));
+            bornCells.lanewise(VectorOperators.XOR, c.and(differsCells))
+                    .lanewise(VectorOperators.XOR, fix)
+                    .intoArray(out, i);
+        }
+    }
+
+    /**
+     * west returns the west neighbors of the words of a vector loaded from
+     * offset i of a row
+     */
+    private static LongVector west(LongVector words, long[] row, int i) {
+        LongVector previous = LongVector.fromArray(SPECIES, row, i - 1);
+        return words.lanewise(VectorOperators.LSHL, 1).or(previous.lanewise(VectorOperators.LSHR, 63));
+    }
+
+    /**
+     * east returns the east neighbors of the words of a vector loaded from
+     * offset i of a row
+     */
+    private static LongVector east(LongVector words, long[] row, int i) {
+        LongVector following = LongVector.fromArray(SPECIES, row, i + 1);
+        return words.lanewise(VectorOperators.LSHR, 1).or(following.lanewise(VectorOperators.LSHL, 63));
+    }
+}
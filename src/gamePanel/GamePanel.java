@@ -1,14 +1,101 @@
 package gamePanel;
 
-import java.awt.GridLayout;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 import javax.swing.JPanel;
 
-import cell.Cell;
 import grid.Grid;
+import simulation.Command;
+import simulation.Simulation;
+import simulation.Snapshot;
 
+/**
+ * GamePanel is the component that displays the cells on a grid. The visible
+ * cells are drawn from snapshots published by the simulation into the int[]
+ * raster of a single image, which is painted in one pass. The panel never
+ * reads the Grid itself, which the simulation thread is evolving.
+ */
 public class GamePanel extends JPanel {
+
+    /**
+     * ALIVE_COLOR is the color of a living cell
+     */
+    private static final int ALIVE_COLOR = Color.BLACK.getRGB();
+
+    /**
+     * NEVER_ALIVE_COLOR is the color of a cell that has never been alive
+     */
+    private static final int NEVER_ALIVE_COLOR = Color.WHITE.getRGB();
+
+    /**
+     * BORDER_COLOR is the color of the lines between cells
+     */
+    private static final int BORDER_COLOR = Color.GRAY.getRGB();
+
+    /**
+     * MIN_BORDER_CELL_SIZE is the smallest size of a cell in pixels for which
+     * the lines between cells are drawn. Below that the lines would hide the
+     * cells.
+     */
+    private static final int MIN_BORDER_CELL_SIZE = 4;
+
+    /**
+     * AFTERLIFE_COLORS is used to lookup the color of a dead cell based on how
+     * long ago it died (its 'afterlife'). There is one color per afterlife
+     * bucket of the Grid.
+     */
+    private static final int[] AFTERLIFE_COLORS = {
+            hsb(217, 18, 95),
+            hsb(217, 15, 93),
+            hsb(223, 9, 90),
+            hsb(227, 6, 89),
+            hsb(248, 4, 88),
+            hsb(300, 2, 86),
+            hsb(0, 4, 88),
+            hsb(12, 7, 89),
+            hsb(19, 10, 90),
+            hsb(21, 12, 92),
+            hsb(23, 15, 93),
+            hsb(25, 18, 94),
+            hsb(25, 21, 96),
+            hsb(26, 23, 97),
+            hsb(27, 26, 99),
+            hsb(27, 27, 100),
+    };
+
+    /**
+     * SHADE_COLORS is used to lookup the color of a cell based on its shade
+     * in a snapshot
+     */
+    private static final int[] SHADE_COLORS = shadeColors();
+
     private Grid grid;
+    private Simulation simulation;
+
+    /**
+     * snapshot is the snapshot of the grid that is displayed
+     */
+    private Snapshot snapshot;
+
+    /**
+     * image is the image the visible cells are drawn into, and pixels is its
+     * raster
+     */
+    private BufferedImage image;
+    private int[] pixels;
+
+    /**
+     * fullRender is set when every visible cell must be redrawn on the next
+     * paint, e.g. after the viewport moved. Otherwise the image is kept up to
+     * date as snapshots are shown.
+     */
+    private boolean fullRender = true;
 
     // viewport sets how many cells are visible in the game UI out of the
     // actual cells. This is used to implement a viewport-zoom
@@ -19,13 +106,25 @@ public class GamePanel extends JPanel {
 
     /**
      * GamePanel is the component that displays the cells on a grid
-     * 
-     * @param grid
+     *
+     * @param grid       The grid to display, only used for its dimensions
+     * @param simulation The simulation that evolves the grid and applies
+     *                   edits from the panel
      */
-    public GamePanel(Grid grid) {
+    public GamePanel(Grid grid, Simulation simulation) {
         this.grid = grid;
+        this.simulation = simulation;
         this.viewportHeight = this.grid.getHeight();
         this.viewportWidth = this.grid.getWidth();
+
+        // Toggle the cell under the pointer on click
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                toggleCellAt(e.getX(), e.getY());
+            }
+        });
+
         updateViewport();
     }
 
@@ -50,22 +149,201 @@ public class GamePanel extends JPanel {
      * the viewport dimensions
      */
     public void updateViewport() {
-        this.removeAll();
-        this.setLayout(new GridLayout(viewportHeight, viewportWidth, 1, 1));
-
-        Cell[][] cells = this.grid.getCells();
-        int height = this.grid.getHeight();
-        int width = this.grid.getWidth();
-        for (int y = 0; y < viewportHeight; y++) {
-            for (int x = 0; x < viewportWidth; x++) {
-                int actualY = (this.viewportY + y) % height;
-                int actualX = (this.viewportX + x) % width;
-                Cell cell = cells[actualY][actualX];
-                this.add(cell);
-            }
+        this.refresh();
+    }
+
+    /**
+     * refresh redraws all the visible cells from the displayed snapshot
+     */
+    public void refresh() {
+        this.fullRender = true;
+        this.repaint();
+    }
+
+    /**
+     * show displays a newer snapshot of the grid. Only the visible cells
+     * whose shade differs from the displayed snapshot are redrawn. Must be
+     * called on the event dispatch thread.
+     *
+     * @param snapshot The snapshot to display
+     * @return The snapshot displayed until now, which is no longer read, or
+     *         null if there was none
+     */
+    public Snapshot show(Snapshot snapshot) {
+        Snapshot previous = this.snapshot;
+        this.snapshot = snapshot;
+        if (previous == null || this.image == null) {
+            this.fullRender = true;
+        } else if (!this.fullRender) {
+            renderChanges(previous, this.image.getWidth(), this.image.getHeight());
         }
-        this.revalidate();
         this.repaint();
+        return previous;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        if (this.image == null || this.image.getWidth() != width || this.image.getHeight() != height) {
+            this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            this.pixels = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+            this.fullRender = true;
+        }
+
+        if (this.fullRender && this.snapshot != null) {
+            render(width, height);
+            this.fullRender = false;
+        }
+
+        g.drawImage(this.image, 0, 0, null);
+    }
+
+    /**
+     * render draws every visible cell into the raster. Cell x of the viewport
+     * covers the pixel columns [x * width / viewportWidth, (x + 1) * width /
+     * viewportWidth), and likewise for rows.
+     */
+    private void render(int width, int height) {
+        int[] colStart = cellStarts(this.viewportWidth, width);
+        int[] rowStart = cellStarts(this.viewportHeight, height);
+        boolean borders = width / this.viewportWidth >= MIN_BORDER_CELL_SIZE
+                && height / this.viewportHeight >= MIN_BORDER_CELL_SIZE;
+
+        int gridHeight = this.grid.getHeight();
+
+        for (int y = 0; y < this.viewportHeight; y++) {
+            int top = rowStart[y];
+            int bottom = rowStart[y + 1];
+
+            // The top pixel line of a row of cells is the border line
+            if (borders) {
+                Arrays.fill(this.pixels, top * width, (top + 1) * width, BORDER_COLOR);
+                top++;
+            }
+            if (top >= bottom) {
+                continue;
+            }
+
+            // Draw one pixel line through the row of cells, then copy it over
+            // the remaining lines of the row
+            int actualY = (this.viewportY + y) % gridHeight;
+            drawCellLine(top * width, colStart, actualY, borders);
+            for (int py = top + 1; py < bottom; py++) {
+                System.arraycopy(this.pixels, top * width, this.pixels, py * width, width);
+            }
+        }
+    }
+
+    /**
+     * renderChanges draws the visible cells whose shade differs between a
+     * snapshot and the displayed one
+     */
+    private void renderChanges(Snapshot previous, int width, int height) {
+        int[] colStart = cellStarts(this.viewportWidth, width);
+        int[] rowStart = cellStarts(this.viewportHeight, height);
+        boolean borders = width / this.viewportWidth >= MIN_BORDER_CELL_SIZE
+                && height / this.viewportHeight >= MIN_BORDER_CELL_SIZE;
+        int edge = borders ? 1 : 0;
+        int gridHeight = this.grid.getHeight();
+        int gridWidth = this.grid.getWidth();
+
+        // The visible columns of the grid, in two parts if the viewport wraps
+        // around its right edge
+        int end = Math.min(this.viewportX + this.viewportWidth, gridWidth);
+        int wrapped = this.viewportX + this.viewportWidth - end;
+
+        for (int y = 0; y < this.viewportHeight; y++) {
+            int actualY = (this.viewportY + y) % gridHeight;
+            for (int part = 0; part < 2; part++) {
+                int from = part == 0 ? this.viewportX : 0;
+                int to = part == 0 ? end : wrapped;
+                int actualX = this.snapshot.mismatch(previous, actualY, from, to);
+                while (actualX >= 0) {
+                    int x = Math.floorMod(actualX - this.viewportX, gridWidth);
+                    int color = SHADE_COLORS[this.snapshot.getShade(actualY, actualX)];
+                    for (int py = rowStart[y] + edge; py < rowStart[y + 1]; py++) {
+                        Arrays.fill(this.pixels, py * width + colStart[x] + edge, py * width + colStart[x + 1],
+                                color);
+                    }
+                    actualX = this.snapshot.mismatch(previous, actualY, actualX + 1, to);
+                }
+            }
+        }
+    }
+
+    /**
+     * drawCellLine draws a single pixel line through a row of cells, starting
+     * at the given offset into the raster
+     */
+    private void drawCellLine(int line, int[] colStart, int actualY, boolean borders) {
+        int gridWidth = this.grid.getWidth();
+        for (int x = 0; x < this.viewportWidth; x++) {
+            int actualX = (this.viewportX + x) % gridWidth;
+            int from = line + colStart[x];
+            int to = line + colStart[x + 1];
+            if (from == to) {
+                continue;
+            }
+            int color = SHADE_COLORS[this.snapshot.getShade(actualY, actualX)];
+            this.pixels[from] = borders ? BORDER_COLOR : color;
+            Arrays.fill(this.pixels, from + 1, to, color);
+        }
+    }
+
+    /**
+     * shadeColors returns the color of each shade of a cell. Living cells are
+     * black. Dead cells are colored according to their "afterlife", how long
+     * ago they died: the default color of a cell is white, meaning it was
+     * never born. Recently living cells are blue and progress towards an
+     * orange hue. See Johnston and Greene p. xii Figure 1.
+     */
+    private static int[] shadeColors() {
+        int[] colors = new int[Snapshot.SHADES];
+        colors[Snapshot.NEVER_ALIVE] = NEVER_ALIVE_COLOR;
+        colors[Snapshot.ALIVE] = ALIVE_COLOR;
+        System.arraycopy(AFTERLIFE_COLORS, 0, colors, Snapshot.DEAD, AFTERLIFE_COLORS.length);
+        return colors;
+    }
+
+    /**
+     * cellStarts returns the first pixel of each of count cells spread over
+     * size pixels, followed by size itself
+     */
+    private static int[] cellStarts(int count, int size) {
+        int[] starts = new int[count + 1];
+        for (int i = 0; i <= count; i++) {
+            starts[i] = (int) ((long) i * size / count);
+        }
+        return starts;
+    }
+
+    /**
+     * toggleCellAt toggles the cell under a pixel of the panel
+     */
+    private void toggleCellAt(int px, int py) {
+        if (px < 0 || py < 0 || px >= getWidth() || py >= getHeight()) {
+            return;
+        }
+        int x = (int) ((long) px * this.viewportWidth / getWidth());
+        int y = (int) ((long) py * this.viewportHeight / getHeight());
+        int actualY = (this.viewportY + y) % this.grid.getHeight();
+        int actualX = (this.viewportX + x) % this.grid.getWidth();
+        this.simulation.send(Command.edit("toggle cell", () -> this.grid.toggle(actualY, actualX)));
+    }
+
+    /**
+     * hsb calculates the rgb value from the hue, saturation and brightness
+     * (or value in hsv)
+     */
+    private static int hsb(int h, int s, int b) {
+        return Color.HSBtoRGB(h / 360f, s / 100f, b / 100f);
     }
 
     /**
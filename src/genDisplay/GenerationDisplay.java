@@ -7,6 +7,8 @@ import javax.swing.BorderFactory;
 import javax.swing.JLabel;
 import javax.swing.SwingConstants;
 
+import grid.PeriodDetector;
+
 public class GenerationDisplay extends JLabel {
     public GenerationDisplay() {
         super();
@@ -14,8 +16,17 @@ public class GenerationDisplay extends JLabel {
         this.setBorder(BorderFactory.createEmptyBorder(2, 8, 2, 8));
         this.setHorizontalAlignment(SwingConstants.CENTER);
         this.setVerticalAlignment(SwingConstants.CENTER);
-        this.setPreferredSize(new Dimension(200, 25));
+        this.setPreferredSize(new Dimension(320, 25));
         this.setFont(new Font("SansSerif", Font.BOLD, 24));
         this.setText("Gen: 0");
     }
+
+    /**
+     * show displays a generation and the period the grid settled into, if
+     * any (see PeriodDetector)
+     */
+    public void show(int generation, int period) {
+        String settled = PeriodDetector.describe(period);
+        this.setText(settled == null ? "Gen: " + generation : "Gen: " + generation + " (" + settled + ")");
+    }
 }
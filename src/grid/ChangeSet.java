@@ -0,0 +1,52 @@
+package grid;
+
+/**
+ * ChangeSet lists the cells whose appearance changed when the Grid evolved
+ * into a generation. Cells are listed by their index y * width + x.
+ */
+public class ChangeSet {
+    private final int generation;
+    private final IntList births = new IntList();
+    private final IntList deaths = new IntList();
+    private final IntList fades = new IntList();
+
+    /**
+     * @param generation The generation the changes lead to
+     */
+    public ChangeSet(int generation) {
+        this.generation = generation;
+    }
+
+    public int getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * getBirths returns the cells that came to life
+     */
+    public IntList getBirths() {
+        return this.births;
+    }
+
+    /**
+     * getDeaths returns the cells that died
+     */
+    public IntList getDeaths() {
+        return this.deaths;
+    }
+
+    /**
+     * getFades returns the dead cells whose afterlife moved into the next
+     * afterlife color bucket (see Grid.AFTERLIFE_INTERVAL)
+     */
+    public IntList getFades() {
+        return this.fades;
+    }
+
+    /**
+     * @return The total number of changed cells
+     */
+    public int size() {
+        return this.births.size() + this.deaths.size() + this.fades.size();
+    }
+}
@@ -0,0 +1,101 @@
+package grid;
+
+import engine.PackedRows;
+import rule.Rule;
+
+/**
+ * Checkpoint is a copy of the whole state of a Grid at one generation: the
+ * living cells, the age of the living cells and the most recent generation
+ * of the dead ones, which drive the afterlife colors, as well as the rule and
+ * the wrap flag. It is taken with Grid.checkpoint and put back with
+ * Grid.restore, and is not modified once taken, so it can be saved on
+ * another thread while the grid keeps evolving.
+ */
+public class Checkpoint {
+    private final int height;
+    private final int width;
+    private final int generation;
+    private final boolean wrap;
+    private final Rule rule;
+
+    /**
+     * cells holds the living cells as bit-packed rows (see PackedRows). ages
+     * holds the age of each living cell, in the order of the cells (row by
+     * row, then column by column), and mrg the most recent generation each
+     * cell was living, -1 if never (see Grid).
+     */
+    private final long[][] cells;
+    private final int[] ages;
+    private final int[] mrg;
+
+    /**
+     * Checkpoint wraps the state of a grid. The arrays are not copied.
+     */
+    public Checkpoint(int height, int width, int generation, boolean wrap, Rule rule, long[][] cells, int[] ages,
+            int[] mrg) {
+        if (cells.length != height || mrg.length != height * width) {
+            throw new IllegalArgumentException("Checkpoint planes do not match its dimensions");
+        }
+        long population = 0;
+        for (long[] row : cells) {
+            if (row.length != PackedRows.words(width)) {
+                throw new IllegalArgumentException("Checkpoint rows do not match its width");
+            }
+            for (long word : row) {
+                population += Long.bitCount(word);
+            }
+        }
+        if (ages.length != population) {
+            throw new IllegalArgumentException("Checkpoint ages do not match its living cells");
+        }
+        this.height = height;
+        this.width = width;
+        this.generation = generation;
+        this.wrap = wrap;
+        this.rule = rule;
+        this.cells = cells;
+        this.ages = ages;
+        this.mrg = mrg;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getGeneration() {
+        return this.generation;
+    }
+
+    public boolean isWrap() {
+        return this.wrap;
+    }
+
+    public Rule getRule() {
+        return this.rule;
+    }
+
+    /**
+     * getCells returns the packed rows of the living cells, not copied
+     */
+    public long[][] getCells() {
+        return this.cells;
+    }
+
+    /**
+     * getAges returns the ages of the living cells, not copied
+     */
+    public int[] getAges() {
+        return this.ages;
+    }
+
+    /**
+     * getMrg returns the mrg plane, indexed by y * width + x, not copied
+     */
+    public int[] getMrg() {
+        return this.mrg;
+    }
+}
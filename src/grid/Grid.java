@@ -1,24 +1,103 @@
 package grid;
 
-import cell.Cell;
+import java.util.Arrays;
+
+import engine.Engine;
+import engine.FastForward;
+import engine.NaiveEngine;
+import engine.PackedRows;
+import rule.Rule;
 
 /**
- * Grid is the representation of the grid on which Cell objects "live"
+ * Grid is the representation of the grid on which cells "live". It only holds
+ * plain data (no Swing components), so it can run without a display. The
+ * state of the cell at (y, x) lives in bit x of row y of the packed cells, and
+ * its age and most recent generation are derived from index y * width + x of
+ * the born and mrg arrays.
  */
 public class Grid {
     /**
-     * cells represents the Cell objects that reside on the Grid
+     * AFTERLIFE_INTERVAL sets the number of generations a dead cell spends in
+     * each afterlife color bucket
+     */
+    public static final int AFTERLIFE_INTERVAL = 5;
+
+    /**
+     * AFTERLIFE_BUCKETS is the number of afterlife color buckets. A cell that
+     * has been dead long enough stays in the last bucket.
+     */
+    public static final int AFTERLIFE_BUCKETS = 16;
+
+    /**
+     * MAX_SIDE is the largest side of a grid, whose cells are indexed by an
+     * int y * width + x
+     */
+    public static final int MAX_SIDE = 46340;
+
+    /**
+     * DEATH_LOG_SIZE is the number of generations deaths are remembered for,
+     * long enough to see a dead cell through every afterlife bucket
+     */
+    private static final int DEATH_LOG_SIZE = AFTERLIFE_INTERVAL * AFTERLIFE_BUCKETS;
+
+    /**
+     * cells holds the living state of the cells on the Grid packed into bits
+     * (see PackedRows)
+     */
+    private long[][] cells;
+
+    /**
+     * buffer is a packed matrix used to hold the cell values for the next
+     * state of the Grid as rules are being applied. After the calculations
+     * are done and a generation passes, the buffer and the cells matrix are
+     * swapped
+     */
+    private long[][] buffer;
+
+    /**
+     * born holds, for each living cell, the generation at which its age is 0.
+     * The age of a living cell is then generation - born, so ages never have
+     * to be incremented for cells that did not change.
+     */
+    private int[] born;
+
+    /**
+     * mrg holds, for each dead cell, the most recent generation it was
+     * living. A value of -1 indicates the cell has never been alive. A living
+     * cell is always living in the most recent generation.
+     */
+    private int[] mrg;
+
+    /**
+     * deathLog holds the cells that died, indexed by their mrg modulo
+     * DEATH_LOG_SIZE, so that the cells changing afterlife bucket can be
+     * found without visiting every dead cell
      */
-    private Cell[][] cells;
+    private IntList[] deathLog;
 
     /**
-     * buffer is a matrix used to hold the cell values for the next state of
-     * the Grid as rules are being applied. After the calculations are done
-     * and a generation passes, the boolean values from the buffer matrix will
-     * be copied to the main matrix's Cells' alive values, and the buffer
-     * matrix will be reset
+     * deathLogStale is set when the grid went back a generation with undo,
+     * so that the death log is rebuilt before the next generation
      */
-    private boolean[][] buffer;
+    private boolean deathLogStale = false;
+
+    /**
+     * hash is the Zobrist hash of the living cells: the exclusive or of the
+     * keys of the living cells (see zobrist). It is updated from the cells
+     * that are born and die, so it never has to be computed from the whole
+     * grid while the grid evolves.
+     */
+    private long hash = 0;
+
+    /**
+     * changes holds the cells that changed during the last call to evolve
+     */
+    private ChangeSet changes;
+
+    /**
+     * engine computes the next generation of the packed cells
+     */
+    private Engine engine;
 
     /**
      * height represents the height of the grid in number of cells
@@ -41,17 +120,46 @@ public class Grid {
      */
     private boolean wrap;
 
+    /**
+     * rule is the rule cells are born and survive by, Conway's Life unless a
+     * pattern says otherwise
+     */
+    private Rule rule = Rule.CONWAY;
+
     /**
      * @param gridHeight The height of the side of the grid, e.g. 40 means a
      *                   40x40 grid
      */
     public Grid(int gridHeight) {
+        this(gridHeight, new NaiveEngine());
+    }
+
+    /**
+     * @param gridHeight The height of the side of the grid, e.g. 40 means a
+     *                   40x40 grid
+     * @param engine     The engine that computes each generation
+     */
+    public Grid(int gridHeight, Engine engine) {
+        if (gridHeight < 1 || gridHeight > MAX_SIDE) {
+            throw new IllegalArgumentException(
+                    String.format("Grid side must be between 1 and %d, got %d", MAX_SIDE, gridHeight));
+        }
 
         this.height = gridHeight;
         this.width = gridHeight;
-        this.cells = initCells();
-        this.buffer = new boolean[gridHeight][gridHeight];
+        this.cells = PackedRows.alloc(gridHeight, gridHeight);
+        this.buffer = PackedRows.alloc(gridHeight, gridHeight);
+        this.born = new int[gridHeight * gridHeight];
+        this.mrg = new int[gridHeight * gridHeight];
+        this.engine = engine;
         this.generation = 0;
+        this.changes = new ChangeSet(0);
+        this.deathLog = new IntList[DEATH_LOG_SIZE];
+        for (int i = 0; i < DEATH_LOG_SIZE; i++) {
+            this.deathLog[i] = new IntList();
+        }
+
+        Arrays.fill(this.mrg, -1);
     }
 
     public boolean isWrap() {
@@ -62,11 +170,16 @@ public class Grid {
         this.wrap = wrap;
     }
 
+    public Rule getRule() {
+        return this.rule;
+    }
+
     /**
-     * getCells returns the cell array of all cells on the grid
+     * setRule changes the rule applied from the next generation on
      */
-    public Cell[][] getCells() {
-        return cells;
+    public void setRule(Rule rule) {
+        this.rule = rule;
+        this.engine.reset();
     }
 
     /**
@@ -84,136 +197,525 @@ public class Grid {
     }
 
     /**
-     * evolve increments the generations value by a tick and applies the Life
-     * rules to the cells matrix. The rules are as follows from Johnston and
-     * Greene p. 3 (conwaylife.com/book)
-     * 1. "If a cell is alive, it survives to the next generation if
-     * --- has 2 or 3 live neighbors [...]."
-     * 2. "If a cell is dead, it comes to life in the next generation if it
-     * --- has exactly 3 live neighbors [...]."
+     * isAlive gets the living state of the cell at a coordinate
      */
-    public void evolve() {
+    public boolean isAlive(int y, int x) {
+        return PackedRows.get(this.cells[y], x);
+    }
 
-        // Apply Life rules to the buffer matrix
-        for (int y = 0; y < this.getHeight(); y++) {
-            for (int x = 0; x < this.getWidth(); x++) {
-                Cell c = this.cells[y][x];
-                int n = countLiveNeighbors(y, x);
+    /**
+     * getPopulation returns the number of living cells on the grid
+     */
+    public long getPopulation() {
+        long population = 0;
+        for (long[] row : this.cells) {
+            for (long word : row) {
+                population += Long.bitCount(word);
+            }
+        }
+        return population;
+    }
 
-                // Simplified rules: a cell survives/generates if it has three
-                // neighbors or if it is both alive and has 2 neighbors;
-                // otherwise it dies
-                boolean lives = n == 3 || (c.state() && n == 2);
+    /**
+     * setAlive sets the living state of the cell at a coordinate, e.g. when a
+     * user edits the grid. A cell set to alive reaches age 0 in the next
+     * generation.
+     */
+    public void setAlive(int y, int x, boolean state) {
+        if (state == isAlive(y, x)) {
+            return;
+        }
+        int index = y * this.width + x;
+        if (state) {
+            this.born[index] = this.generation + 1;
+        } else {
+            die(index);
+        }
+        PackedRows.set(this.cells[y], x, state);
+        this.hash ^= zobrist(index);
+        this.engine.touch(y, x);
+    }
 
-                this.buffer[y][x] = lives;
+    /**
+     * stamp places a pattern onto the grid as a single edit: the cells are
+     * combined a word at a time, only the cells that change are recorded, and
+     * the engine is reset once. Cells of the pattern that fall outside of the
+     * grid are dropped. As with setAlive, cells set to alive reach age 0 in
+     * the next generation.
+     *
+     * @param rows      The packed rows of the pattern (see PackedRows), rows
+     *                  without living cells may be null
+     * @param height    The height of the pattern
+     * @param width     The width of the pattern
+     * @param top       The row of the grid the top of the transformed pattern
+     *                  is placed on, may be negative
+     * @param left      The column of the grid the left of the transformed
+     *                  pattern is placed on, may be negative
+     * @param mode      How the pattern combines with the cells of the grid
+     * @param transform The rotation or reflection applied to the pattern
+     * @return The number of cells that changed
+     */
+    public long stamp(long[][] rows, int height, int width, int top, int left, StampMode mode,
+            Transform transform) {
+        rows = transform.apply(rows, height, width);
+        if (transform.swapsAxes()) {
+            int swap = height;
+            height = width;
+            width = swap;
+        }
 
+        int from = Math.max(0, left);
+        int to = (int) Math.min(this.width, (long) left + width);
+        if (from >= to) {
+            return 0;
+        }
+        // SET clears the cells under the pattern, including its dead cells
+        long[] mask = new long[this.cells[0].length];
+        PackedRows.fill(mask, from, to);
+        long[] shifted = new long[mask.length];
+
+        long changed = 0;
+        int bottom = (int) Math.min(this.height, (long) top + height);
+        for (int y = Math.max(0, top); y < bottom; y++) {
+            long[] source = rows[y - top];
+            if (source == null && mode != StampMode.SET) {
+                continue;
+            }
+            PackedRows.shift(source, left, shifted, this.width);
+
+            long[] row = this.cells[y];
+            for (int i = 0; i < row.length; i++) {
+                long next;
+                switch (mode) {
+                    case SET:
+                        next = (row[i] & ~mask[i]) | shifted[i];
+                        break;
+                    case OR:
+                        next = row[i] | shifted[i];
+                        break;
+                    default:
+                        next = row[i] ^ shifted[i];
+                        break;
+                }
+                long flipped = row[i] ^ next;
+                row[i] = next;
+                changed += Long.bitCount(flipped);
+                while (flipped != 0) {
+                    int bit = Long.numberOfTrailingZeros(flipped);
+                    flipped &= flipped - 1;
+
+                    int index = y * this.width + (i << 6) + bit;
+                    this.hash ^= zobrist(index);
+                    if ((next & (1L << bit)) != 0) {
+                        this.born[index] = this.generation + 1;
+                    } else {
+                        die(index);
+                    }
+                }
             }
         }
 
-        // Toggle the cells based on the buffer values
-        for (int y = 0; y < this.getWidth(); y++) {
-            for (int x = 0; x < this.getWidth(); x++) {
-                Cell cell = this.cells[y][x];
-                boolean state = this.buffer[y][x];
+        if (changed > 0) {
+            this.engine.reset();
+        }
+        return changed;
+    }
+
+    /**
+     * toggle toggles the living state of the cell at a coordinate
+     */
+    public void toggle(int y, int x) {
+        setAlive(y, x, !isAlive(y, x));
+    }
 
-                // Increment or reset age
-                if (state) {
-                    cell.incAge();
-                } else {
-                    cell.setDeadColor(this.generation);
-                    cell.setAge(-1);
-                }
+    /**
+     * getAge returns the age of the cell at a coordinate. A cell that was born
+     * on the same generation getAge is called has age 0. A dead cell has age
+     * -1.
+     */
+    public int getAge(int y, int x) {
+        if (!isAlive(y, x)) {
+            return -1;
+        }
+        return this.generation - this.born[y * this.width + x];
+    }
+
+    /**
+     * getMrg returns the most recent generation the cell at a coordinate was
+     * living, or -1 if it has never been alive
+     */
+    public int getMrg(int y, int x) {
+        int index = y * this.width + x;
+        if (isAlive(y, x) && this.born[index] <= this.generation) {
+            return this.generation - 1;
+        }
+        return this.mrg[index];
+    }
+
+    /**
+     * getChanges returns the cells that changed during the last call to
+     * evolve. The returned ChangeSet is not modified by later generations.
+     */
+    public ChangeSet getChanges() {
+        return this.changes;
+    }
 
-                cell.setState(state);
-                if (state) {
-                    cell.setMrg(this.generation);
+    /**
+     * evolve increments the generations value by a tick and applies the rule
+     * to the cells matrix. For Conway's Life (B3/S23) the rules are as follows
+     * from Johnston and Greene p. 3 (conwaylife.com/book)
+     * 1. "If a cell is alive, it survives to the next generation if
+     * --- has 2 or 3 live neighbors [...]."
+     * 2. "If a cell is dead, it comes to life in the next generation if it
+     * --- has exactly 3 live neighbors [...]."
+     */
+    public void evolve() {
+        if (this.deathLogStale) {
+            logDeaths();
+        }
+
+        // Apply the rule to the buffer matrix
+        this.engine.step(this.cells, this.buffer, this.getWidth(), this.wrap, this.rule);
+
+        ChangeSet changes = new ChangeSet(this.generation + 1);
+
+        // Record the births and deaths. Cells that did not change keep their
+        // born and mrg values, so only changed bits are visited, and tiles the
+        // engine reports as unchanged are skipped entirely.
+        this.deathLog[this.generation % DEATH_LOG_SIZE].clear();
+        for (int top = 0; top < this.getHeight(); top += Engine.TILE_SIZE) {
+            int bottom = Math.min(top + Engine.TILE_SIZE, this.getHeight());
+            for (int i = 0; i < this.cells[top].length; i++) {
+                if (!this.engine.tileChanged(top / Engine.TILE_SIZE, i)) {
+                    continue;
+                }
+                for (int y = top; y < bottom; y++) {
+                    long next = this.buffer[y][i];
+                    long flipped = this.cells[y][i] ^ next;
+                    while (flipped != 0) {
+                        int bit = Long.numberOfTrailingZeros(flipped);
+                        flipped &= flipped - 1;
+
+                        int index = y * this.width + (i << 6) + bit;
+                        this.hash ^= zobrist(index);
+                        if ((next & (1L << bit)) != 0) {
+                            changes.getBirths().add(index);
+                            this.born[index] = this.generation + 1;
+                        } else {
+                            changes.getDeaths().add(index);
+                            die(index);
+                        }
+                    }
                 }
             }
         }
 
-        // Initialize a new matrix for the new buffer
-        this.buffer = new boolean[this.getHeight()][this.getWidth()];
+        // Swap the buffer in as the current generation
+        long[][] swap = this.cells;
+        this.cells = this.buffer;
+        this.buffer = swap;
 
         // Increment generation
         this.generation++;
+
+        collectFades(changes);
+        this.changes = changes;
     }
 
     /**
-     * clearGrid clears the Grid so that all cells are set to a dead state.
-     * Generation is reset to 0.
+     * replay evolves the grid by a generation whose births and deaths are
+     * already known, e.g. recorded by a Timeline, instead of applying the
+     * rule. The bookkeeping is the same as in evolve.
      */
-    public void clearGrid() {
+    void replay(IntList births, IntList deaths) {
+        if (this.deathLogStale) {
+            logDeaths();
+        }
+        ChangeSet changes = new ChangeSet(this.generation + 1);
+
+        this.deathLog[this.generation % DEATH_LOG_SIZE].clear();
+        for (int k = 0; k < births.size(); k++) {
+            int index = births.get(k);
+            PackedRows.set(this.cells[index / this.width], index % this.width, true);
+            this.hash ^= zobrist(index);
+            changes.getBirths().add(index);
+            this.born[index] = this.generation + 1;
+        }
+        for (int k = 0; k < deaths.size(); k++) {
+            int index = deaths.get(k);
+            PackedRows.set(this.cells[index / this.width], index % this.width, false);
+            this.hash ^= zobrist(index);
+            changes.getDeaths().add(index);
+            die(index);
+        }
 
-        for (int y = 0; y < this.getHeight(); y++) {
-            for (int x = 0; x < this.getWidth(); x++) {
-                this.cells[y][x].resetCell();
-            }
+        this.generation++;
+
+        collectFades(changes);
+        this.changes = changes;
+        this.engine.reset();
+    }
+
+    /**
+     * undo takes the grid back a generation whose births and deaths are
+     * known, e.g. recorded by a Timeline. The cells that were born die again
+     * with the mrg they had (see getLastMrg), and the cells that died come
+     * back to life with the age they had (see getLastAge). The mrg the cells
+     * that died had before is not put back: it is only read once they are
+     * dead again, or for cells set to alive by an edit (see die), which only
+     * exist on the generation of the edit.
+     *
+     * @param mrgs The mrg of each cell of births before it was born
+     * @param ages The age of each cell of deaths on its last living
+     *             generation
+     */
+    void undo(IntList births, IntList mrgs, IntList deaths, IntList ages) {
+        this.generation--;
+        for (int k = 0; k < births.size(); k++) {
+            int index = births.get(k);
+            PackedRows.set(this.cells[index / this.width], index % this.width, false);
+            this.hash ^= zobrist(index);
+            this.mrg[index] = mrgs.get(k);
+        }
+        for (int k = 0; k < deaths.size(); k++) {
+            int index = deaths.get(k);
+            PackedRows.set(this.cells[index / this.width], index % this.width, true);
+            this.hash ^= zobrist(index);
+            this.born[index] = this.generation - ages.get(k);
         }
 
-        this.generation = 0;
+        this.deathLogStale = true;
+        this.changes = new ChangeSet(this.generation);
+        this.engine.clear();
     }
 
-    public int getGeneration() {
-        return this.generation;
+    /**
+     * getLastMrg returns the mrg a cell born in the current generation had
+     * while it was dead
+     */
+    int getLastMrg(int index) {
+        return this.mrg[index];
     }
 
-    public void setGeneration(int generation) {
-        this.generation = generation;
+    /**
+     * getLastAge returns the age a cell that died in the current generation
+     * had on the generation before
+     */
+    int getLastAge(int index) {
+        return this.generation - 1 - this.born[index];
     }
 
     /**
-     * initCells initializes the matrix of Cell objects on the Grid
+     * fastForward advances the grid by a number of generations at once. The
+     * intermediate generations are skipped, so the afterlife of the cells is
+     * not known afterwards: every dead cell is reset to never having lived
+     * and every living cell to age 0. Only the cells of the grid are
+     * advanced, so the engine drops any cells it keeps beyond it.
+     *
+     * @param generations The number of generations to advance by
+     * @param fastForward The algorithm that advances the cells
      */
-    Cell[][] initCells() {
-        Cell[][] cells = new Cell[this.getHeight()][this.getWidth()];
-        for (int y = 0; y < this.getWidth(); y++) {
-            for (int x = 0; x < this.getHeight(); x++) {
-                Cell c = new Cell();
-                cells[y][x] = c;
-            }
+    public void fastForward(int generations, FastForward fastForward) {
+        if (generations <= 0) {
+            return;
+        }
+
+        fastForward.advance(this.cells, this.getWidth(), this.wrap, this.rule, generations);
+
+        this.generation += generations;
+        Arrays.fill(this.born, this.generation);
+        Arrays.fill(this.mrg, -1);
+        for (IntList logged : this.deathLog) {
+            logged.clear();
         }
-        return cells;
+        this.changes = new ChangeSet(this.generation);
+        this.hash = computeHash();
+        this.engine.clear();
     }
 
     /**
-     * countLiveNeighbors counts the number of live neighbors of a cell at a
-     * given coordinate in a Moore neighborhood (8-cell neighborhood)
-     * 
-     * @return The number of live neighbors found
+     * checkpoint returns a copy of the state of the grid
      */
-    int countLiveNeighbors(int y, int x) {
-        // Initialize neighbor count
-        int n = 0;
+    public Checkpoint checkpoint() {
+        long[][] cells = new long[this.height][];
+        for (int y = 0; y < this.height; y++) {
+            cells[y] = this.cells[y].clone();
+        }
+        int[] ages = new int[(int) getPopulation()];
+        int k = 0;
+        for (int y = 0; y < this.height; y++) {
+            for (int i = 0; i < cells[y].length; i++) {
+                long word = cells[y][i];
+                while (word != 0) {
+                    int index = y * this.width + (i << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    ages[k++] = this.generation - this.born[index];
+                }
+            }
+        }
+        return new Checkpoint(this.height, this.width, this.generation, this.wrap, this.rule, cells, ages,
+                this.mrg.clone());
+    }
 
-        int rows = this.cells.length;
-        int cols = this.cells[0].length;
+    /**
+     * restore puts back the state of a grid from a checkpoint of a grid of
+     * the same dimensions. The checkpoint must not be used afterwards, its
+     * mrg plane is taken over by the grid.
+     *
+     * @throws IllegalArgumentException if the dimensions do not match
+     */
+    public void restore(Checkpoint checkpoint) {
+        if (checkpoint.getHeight() != this.height || checkpoint.getWidth() != this.width) {
+            throw new IllegalArgumentException(String.format("Checkpoint is %dx%d, the grid is %dx%d",
+                    checkpoint.getWidth(), checkpoint.getHeight(), this.width, this.height));
+        }
+        this.generation = checkpoint.getGeneration();
+        int[] ages = checkpoint.getAges();
+        int k = 0;
+        for (int y = 0; y < this.height; y++) {
+            long[] row = checkpoint.getCells()[y];
+            System.arraycopy(row, 0, this.cells[y], 0, this.cells[y].length);
+            for (int i = 0; i < row.length; i++) {
+                long word = row[i];
+                while (word != 0) {
+                    int index = y * this.width + (i << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    this.born[index] = this.generation - ages[k++];
+                }
+            }
+        }
+        this.mrg = checkpoint.getMrg();
+        this.wrap = checkpoint.isWrap();
+        this.rule = checkpoint.getRule();
+
+        logDeaths();
+        this.changes = new ChangeSet(this.generation);
+        this.hash = computeHash();
+        this.engine.clear();
+    }
 
-        // Iterate over row range of [y-1, y+1] and col range [x-1, x+1]
-        // but don't go out of bounds
-        for (int rowCursor = y - 1; rowCursor <= y + 1; rowCursor++) {
-            for (int colCursor = x - 1; colCursor <= x + 1; colCursor++) {
-                // Skip if it's the cell we're evolving
-                if (rowCursor == y && colCursor == x) {
-                    continue;
+    /**
+     * logDeaths rebuilds the death log from the mrg of the dead cells,
+     * keeping the deaths recent enough to still change afterlife bucket
+     */
+    private void logDeaths() {
+        for (IntList logged : this.deathLog) {
+            logged.clear();
+        }
+        int oldest = this.generation - DEATH_LOG_SIZE;
+        for (int y = 0; y < this.height; y++) {
+            long[] row = this.cells[y];
+            for (int x = 0, index = y * this.width; x < this.width; x++, index++) {
+                int mrg = this.mrg[index];
+                if (mrg > oldest && mrg >= 0 && (row[x >>> 6] & (1L << x)) == 0) {
+                    this.deathLog[mrg % DEATH_LOG_SIZE].add(index);
                 }
+            }
+        }
+        this.deathLogStale = false;
+    }
+
+    /**
+     * die records the most recent generation of a living cell that is dying
+     * in the current generation, and remembers the cell so that it can be
+     * found again when its afterlife color changes. A cell set to alive by an
+     * edit that dies before living through a generation keeps its previous
+     * mrg.
+     */
+    private void die(int index) {
+        if (this.born[index] <= this.generation) {
+            this.mrg[index] = this.generation - 1;
+        }
+        int mrg = this.mrg[index];
+        if (mrg >= 0 && this.generation - mrg < DEATH_LOG_SIZE) {
+            this.deathLog[mrg % DEATH_LOG_SIZE].add(index);
+        }
+    }
 
-                // Wrap around rows/cols
-                int row = rowCursor;
-                int col = colCursor;
-                if (this.wrap) {
-                    row = (rowCursor + rows) % rows;
-                    col = (colCursor + cols) % cols;
+    /**
+     * collectFades adds the dead cells that moved into a new afterlife bucket
+     * in the current generation to a change set. A dead cell's afterlife is
+     * generation - 1 - mrg, so the cells that changed bucket are the logged
+     * deaths whose mrg is a multiple of AFTERLIFE_INTERVAL generations back
+     * and that have not come back to life since.
+     */
+    private void collectFades(ChangeSet changes) {
+        for (int bucket = 1; bucket < AFTERLIFE_BUCKETS; bucket++) {
+            int mrg = this.generation - 1 - bucket * AFTERLIFE_INTERVAL;
+            if (mrg < 0) {
+                break;
+            }
+            IntList logged = this.deathLog[mrg % DEATH_LOG_SIZE];
+            for (int k = 0; k < logged.size(); k++) {
+                int index = logged.get(k);
+                if (this.mrg[index] == mrg && !isAlive(index / this.width, index % this.width)) {
+                    changes.getFades().add(index);
                 }
-                // Check out of bounds in case of wrap == false
-                if (0 <= row &&
-                        row < rows &&
-                        0 <= col &&
-                        col < cols &&
-                        this.cells[row][col].state()) {
-                    n++;
+            }
+        }
+    }
+
+    /**
+     * clearGrid clears the Grid so that all cells are set to a dead state.
+     * Generation is reset to 0.
+     */
+    public void clearGrid() {
+
+        PackedRows.clear(this.cells);
+        Arrays.fill(this.mrg, -1);
+        for (IntList logged : this.deathLog) {
+            logged.clear();
+        }
+        this.changes = new ChangeSet(0);
+        this.hash = 0;
+        this.engine.clear();
+
+        this.generation = 0;
+    }
+
+    /**
+     * getHash returns the Zobrist hash of the living cells. Two grids of the
+     * same dimensions with the same living cells have the same hash, and
+     * grids with different living cells almost surely do not.
+     */
+    public long getHash() {
+        return this.hash;
+    }
+
+    /**
+     * computeHash computes the hash of the living cells from the whole grid,
+     * after the cells were replaced at once
+     */
+    private long computeHash() {
+        long hash = 0;
+        for (int y = 0; y < this.height; y++) {
+            for (int i = 0; i < this.cells[y].length; i++) {
+                long word = this.cells[y][i];
+                while (word != 0) {
+                    hash ^= zobrist(y * this.width + (i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
                 }
             }
         }
-        return n;
+        return hash;
+    }
+
+    /**
+     * zobrist returns the key of a cell, the splitmix64 mix of its index, so
+     * that the keys are random but need no table
+     */
+    private static long zobrist(int index) {
+        long z = (index + 1L) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public int getGeneration() {
+        return this.generation;
+    }
+
+    public void setGeneration(int generation) {
+        this.generation = generation;
     }
 }
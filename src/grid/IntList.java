@@ -0,0 +1,47 @@
+package grid;
+
+import java.util.Arrays;
+
+/**
+ * IntList is a growable list of primitive ints, used to hold cell indices
+ * without boxing them
+ */
+public class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this.values = new int[16];
+    }
+
+    /**
+     * add appends a value to the end of the list
+     */
+    public void add(int value) {
+        if (this.size == this.values.length) {
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        this.values[this.size++] = value;
+    }
+
+    /**
+     * get returns the value at an index of the list
+     */
+    public int get(int index) {
+        return this.values[index];
+    }
+
+    /**
+     * @return The number of values in the list
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * clear removes every value from the list, keeping its capacity
+     */
+    public void clear() {
+        this.size = 0;
+    }
+}
@@ -0,0 +1,86 @@
+package grid;
+
+import java.util.Arrays;
+
+/**
+ * PeriodDetector finds when a Grid settles into a still life or an
+ * oscillator, from the hash of its living cells (see Grid.getHash). It keeps
+ * the generation each recent hash was last seen at in a small table indexed
+ * by the low bits of the hash, so that noticing a hash that was seen before
+ * costs a single lookup per generation. A newer hash may take the slot of an
+ * older one, in which case a repeating state is only noticed on a later
+ * cycle.
+ */
+public class PeriodDetector {
+
+    /**
+     * TABLE_SIZE is the number of hashes remembered, a power of two
+     */
+    private static final int TABLE_SIZE = 1 << 12;
+
+    /**
+     * MAX_PERIOD is the longest period detected
+     */
+    public static final int MAX_PERIOD = TABLE_SIZE / 4;
+
+    private final long[] hashes = new long[TABLE_SIZE];
+    private final int[] generations = new int[TABLE_SIZE];
+
+    /**
+     * period is the period of the last state checked, 0 if it was not seen in
+     * the last MAX_PERIOD generations
+     */
+    private int period = 0;
+
+    public PeriodDetector() {
+        clear();
+    }
+
+    /**
+     * check remembers the hash of the living cells of a grid and returns the
+     * number of generations since the same cells were last living, or 0 if
+     * they were not in the last MAX_PERIOD generations. 1 means that the grid
+     * is stable.
+     */
+    public int check(Grid grid) {
+        long hash = grid.getHash();
+        int generation = grid.getGeneration();
+        int slot = (int) (hash ^ (hash >>> 32)) & (TABLE_SIZE - 1);
+
+        int seen = this.generations[slot];
+        if (this.hashes[slot] == hash && seen < generation && generation - seen <= MAX_PERIOD) {
+            this.period = generation - seen;
+        } else {
+            this.period = 0;
+        }
+        this.hashes[slot] = hash;
+        this.generations[slot] = generation;
+        return this.period;
+    }
+
+    /**
+     * getPeriod returns the result of the last check
+     */
+    public int getPeriod() {
+        return this.period;
+    }
+
+    /**
+     * clear forgets every hash, e.g. after the grid was edited
+     */
+    public void clear() {
+        Arrays.fill(this.generations, Integer.MAX_VALUE);
+        this.period = 0;
+    }
+
+    /**
+     * describe returns a short description of a period returned by check,
+     * e.g. "stable" or "period 2", or null for 0
+     */
+    public static String describe(int period) {
+        if (period == 0) {
+            return null;
+        }
+        return period == 1 ? "stable" : "period " + period;
+    }
+}
@@ -0,0 +1,22 @@
+package grid;
+
+/**
+ * StampMode is how the cells of a pattern stamped onto a Grid combine with
+ * the cells already there (see Grid.stamp)
+ */
+public enum StampMode {
+    /**
+     * SET replaces every cell under the pattern, dead cells included
+     */
+    SET,
+
+    /**
+     * OR sets the living cells of the pattern to alive and leaves the others
+     */
+    OR,
+
+    /**
+     * XOR toggles the cells under the living cells of the pattern
+     */
+    XOR,
+}
@@ -0,0 +1,369 @@
+package grid;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Timeline remembers the recent generations of a Grid so that it can be
+ * rewound. It holds keyframes, checkpoints of the whole grid, each followed
+ * by the deltas of the generations after it. A delta lists the births and
+ * deaths of a generation as cell indices, stored as varint gaps, as well as
+ * the mrg each cell born had and the age each dying cell had, so that it can
+ * be replayed forwards from the keyframe before it or undone backwards from
+ * the current generation. Both only visit the changed cells. A generation is
+ * rewound to whichever way reads the fewest bytes, so stepping back a
+ * generation undoes a single delta, and going further back restores a
+ * keyframe.
+ *
+ * A new keyframe is taken once the deltas since the last one outweigh half
+ * of it. The oldest keyframes and their deltas are forgotten when the
+ * timeline holds more than its capacity in bytes.
+ */
+public class Timeline {
+
+    /**
+     * DEFAULT_CAPACITY is the memory used by a timeline unless stated
+     * otherwise: a quarter of the heap, at most 256 MB
+     */
+    public static final long DEFAULT_CAPACITY = Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 4);
+
+    /**
+     * MAX_DELTAS is the number of generations after which a keyframe is
+     * taken even if the grid hardly changed
+     */
+    private static final int MAX_DELTAS = 1024;
+
+    /**
+     * DELTA_OVERHEAD is the number of bytes counted for a delta on top of its
+     * length
+     */
+    private static final int DELTA_OVERHEAD = 16;
+
+    private final long capacity;
+    private final ArrayDeque<Keyframe> keyframes = new ArrayDeque<Keyframe>();
+    private long size = 0;
+
+    /**
+     * births, mrgs, deaths, ages and scratch are reused to encode and decode
+     * deltas, and position is the next byte of the delta being decoded
+     */
+    private final IntList births = new IntList();
+    private final IntList mrgs = new IntList();
+    private final IntList deaths = new IntList();
+    private final IntList ages = new IntList();
+    private byte[] scratch = new byte[64];
+    private int position;
+
+    /**
+     * @param capacity The number of bytes the timeline may hold. The newest
+     *                 keyframe is kept even if it is larger.
+     */
+    public Timeline(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * prepare takes a keyframe of the grid before it evolves, if the
+     * timeline is empty or the deltas since the last keyframe outweigh it
+     */
+    public void prepare(Grid grid) {
+        Keyframe last = this.keyframes.peekLast();
+        if (last != null && last.getEnd() == grid.getGeneration() && last.deltaSize < last.size / 2
+                && last.deltas.size() < MAX_DELTAS) {
+            return;
+        }
+        if (last != null && last.getEnd() != grid.getGeneration()) {
+            clear();
+        }
+        Keyframe keyframe = new Keyframe(grid.checkpoint());
+        this.keyframes.add(keyframe);
+        this.size += keyframe.getSize();
+        trim();
+    }
+
+    /**
+     * record adds the changes of the generation the grid just evolved into,
+     * after prepare was called
+     */
+    public void record(Grid grid) {
+        Keyframe last = this.keyframes.peekLast();
+        if (last == null || last.getEnd() + 1 != grid.getGeneration()) {
+            clear();
+            return;
+        }
+        byte[] delta = encode(grid);
+        last.deltas.add(delta);
+        last.deltaSize += delta.length + DELTA_OVERHEAD;
+        this.size += delta.length + DELTA_OVERHEAD;
+        trim();
+    }
+
+    /**
+     * rewind puts the grid back to a recorded generation and forgets the
+     * generations after it. The wrap flag of the grid is kept.
+     *
+     * @return Whether the generation was recorded
+     */
+    public boolean rewind(Grid grid, int generation) {
+        Keyframe last = this.keyframes.peekLast();
+        if (last == null || last.getEnd() != grid.getGeneration() || generation > grid.getGeneration()) {
+            return false;
+        }
+
+        // Find the keyframe before the generation, and the bytes of the
+        // deltas to undo to reach it from the current generation
+        Keyframe keyframe = null;
+        long undone = 0;
+        for (Iterator<Keyframe> it = this.keyframes.descendingIterator(); it.hasNext();) {
+            Keyframe k = it.next();
+            if (k.state.getGeneration() <= generation) {
+                keyframe = k;
+                undone += k.getDeltaSize(generation - k.state.getGeneration(), k.deltas.size());
+                break;
+            }
+            undone += k.deltaSize;
+        }
+        if (keyframe == null) {
+            return false;
+        }
+        int replayed = generation - keyframe.state.getGeneration();
+
+        // The cells set to alive by the edit before the first keyframe have
+        // an mrg that cannot be undone (see Grid.undo), so the first keyframe
+        // itself is always restored
+        boolean first = keyframe == this.keyframes.peekFirst() && replayed == 0;
+        if (!first && undone <= keyframe.size + keyframe.getDeltaSize(0, replayed)) {
+            // Undo the generations after the one rewound to, newest first
+            while (grid.getGeneration() > generation) {
+                last = this.keyframes.getLast();
+                if (last.deltas.isEmpty()) {
+                    this.size -= this.keyframes.removeLast().getSize();
+                    continue;
+                }
+                decode(removeDelta(last), grid.getGeneration());
+                grid.undo(this.births, this.mrgs, this.deaths, this.ages);
+            }
+            return true;
+        }
+
+        // The mrg plane of a checkpoint is taken over by the grid
+        Checkpoint state = keyframe.state;
+        boolean wrap = grid.isWrap();
+        grid.restore(new Checkpoint(state.getHeight(), state.getWidth(), state.getGeneration(), state.isWrap(),
+                state.getRule(), state.getCells(), state.getAges(), state.getMrg().clone()));
+        grid.setWrap(wrap);
+        for (int k = 0; k < replayed; k++) {
+            decode(keyframe.deltas.get(k), grid.getGeneration() + 1);
+            grid.replay(this.births, this.deaths);
+        }
+
+        // Forget the generations after the one rewound to
+        while (this.keyframes.peekLast() != keyframe) {
+            this.size -= this.keyframes.removeLast().getSize();
+        }
+        while (keyframe.deltas.size() > replayed) {
+            removeDelta(keyframe);
+        }
+        return true;
+    }
+
+    /**
+     * getStart returns the oldest generation that can be rewound to, or -1
+     * if the timeline is empty
+     */
+    public int getStart() {
+        Keyframe first = this.keyframes.peekFirst();
+        return first == null ? -1 : first.state.getGeneration();
+    }
+
+    /**
+     * getSize returns the number of bytes held by the timeline
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * clear forgets every generation, e.g. after the grid was edited
+     */
+    public void clear() {
+        this.keyframes.clear();
+        this.size = 0;
+    }
+
+    /**
+     * trim forgets the oldest keyframes while the timeline is over capacity
+     */
+    private void trim() {
+        while (this.size > this.capacity && this.keyframes.size() > 1) {
+            this.size -= this.keyframes.removeFirst().getSize();
+        }
+    }
+
+    /**
+     * removeDelta removes the newest delta of a keyframe and returns it
+     */
+    private byte[] removeDelta(Keyframe keyframe) {
+        byte[] delta = keyframe.deltas.remove(keyframe.deltas.size() - 1);
+        keyframe.deltaSize -= delta.length + DELTA_OVERHEAD;
+        this.size -= delta.length + DELTA_OVERHEAD;
+        return delta;
+    }
+
+    /**
+     * encode turns the changes of the generation a grid just evolved into
+     * into a delta: the number of births and the zigzag encoded gaps between
+     * the births, the same for the deaths, then the mrg of each birth and
+     * the age of each death (see Grid.getLastMrg and Grid.getLastAge),
+     * zigzag encoded relative to the generation before
+     */
+    private byte[] encode(Grid grid) {
+        ChangeSet changes = grid.getChanges();
+        int[] sortedBirths = sortByRow(changes.getBirths(), grid);
+        int[] sortedDeaths = sortByRow(changes.getDeaths(), grid);
+        int length = 10 * (1 + sortedBirths.length + sortedDeaths.length);
+        if (this.scratch.length < length) {
+            this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+        }
+
+        int size = 0;
+        for (int[] cells : new int[][] { sortedBirths, sortedDeaths }) {
+            size = putVarint(size, cells.length);
+            int previous = 0;
+            for (int index : cells) {
+                size = putVarint(size, zigzag(index - previous));
+                previous = index;
+            }
+        }
+        int previousGeneration = grid.getGeneration() - 1;
+        for (int index : sortedBirths) {
+            size = putVarint(size, zigzag(previousGeneration - grid.getLastMrg(index)));
+        }
+        for (int index : sortedDeaths) {
+            size = putVarint(size, zigzag(grid.getLastAge(index)));
+        }
+        return Arrays.copyOf(this.scratch, size);
+    }
+
+    /**
+     * sortByRow orders cells by row with a counting sort, keeping the order
+     * of the cells of a row. Grid.evolve lists the cells of a row from left
+     * to right, so they end up in increasing order and the gaps between them
+     * are small.
+     */
+    private static int[] sortByRow(IntList cells, Grid grid) {
+        int[] starts = new int[grid.getHeight() + 1];
+        for (int k = 0; k < cells.size(); k++) {
+            starts[cells.get(k) / grid.getWidth() + 1]++;
+        }
+        for (int y = 0; y < grid.getHeight(); y++) {
+            starts[y + 1] += starts[y];
+        }
+        int[] sorted = new int[cells.size()];
+        for (int k = 0; k < cells.size(); k++) {
+            int index = cells.get(k);
+            sorted[starts[index / grid.getWidth()]++] = index;
+        }
+        return sorted;
+    }
+
+    private int putVarint(int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            this.scratch[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        this.scratch[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * decode reads the births, mrgs, deaths and ages of the delta of a
+     * generation written by encode
+     */
+    private void decode(byte[] delta, int generation) {
+        this.position = 0;
+        for (IntList cells : new IntList[] { this.births, this.deaths }) {
+            cells.clear();
+            int count = getVarint(delta);
+            int index = 0;
+            for (int k = 0; k < count; k++) {
+                index += unzigzag(getVarint(delta));
+                cells.add(index);
+            }
+        }
+        int previousGeneration = generation - 1;
+        this.mrgs.clear();
+        for (int k = 0; k < this.births.size(); k++) {
+            this.mrgs.add(previousGeneration - unzigzag(getVarint(delta)));
+        }
+        this.ages.clear();
+        for (int k = 0; k < this.deaths.size(); k++) {
+            this.ages.add(unzigzag(getVarint(delta)));
+        }
+    }
+
+    /**
+     * zigzag maps signed numbers to unsigned ones so that numbers close to 0
+     * stay small: 0, -1, 1, -2 become 0, 1, 2, 3
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int getVarint(byte[] bytes) {
+        byte b = bytes[this.position++];
+        int value = b & 0x7f;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = bytes[this.position++];
+            value |= (b & 0x7f) << shift;
+        }
+        return value;
+    }
+
+    /**
+     * Keyframe is a checkpoint of the grid and the deltas of the generations
+     * after it. size counts the bytes of the checkpoint, deltaSize those of
+     * the deltas.
+     */
+    private static final class Keyframe {
+        private final Checkpoint state;
+        private final ArrayList<byte[]> deltas = new ArrayList<byte[]>();
+        private final long size;
+        private long deltaSize = 0;
+
+        Keyframe(Checkpoint state) {
+            this.state = state;
+            long rows = (long) state.getHeight() * (state.getCells()[0].length * Long.BYTES + 16);
+            this.size = rows + 4L * (state.getAges().length + state.getMrg().length) + 64;
+        }
+
+        long getSize() {
+            return this.size + this.deltaSize;
+        }
+
+        /**
+         * getDeltaSize returns the bytes of the deltas from one index up to
+         * another, excluded
+         */
+        long getDeltaSize(int from, int to) {
+            long size = 0;
+            for (int k = from; k < to; k++) {
+                size += this.deltas.get(k).length + DELTA_OVERHEAD;
+            }
+            return size;
+        }
+
+        /**
+         * getEnd returns the newest generation recorded after the keyframe
+         */
+        int getEnd() {
+            return this.state.getGeneration() + this.deltas.size();
+        }
+    }
+}
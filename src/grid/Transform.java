@@ -0,0 +1,100 @@
+package grid;
+
+import engine.PackedRows;
+
+/**
+ * Transform is a rotation or reflection of a pattern stamped onto a Grid
+ * (see Grid.stamp). Rotations are clockwise.
+ */
+public enum Transform {
+    IDENTITY,
+    ROTATE_90,
+    ROTATE_180,
+    ROTATE_270,
+    FLIP_HORIZONTAL,
+    FLIP_VERTICAL,
+    FLIP_DIAGONAL,
+    FLIP_ANTIDIAGONAL;
+
+    /**
+     * swapsAxes returns whether the transform turns the rows of a pattern
+     * into its columns
+     */
+    public boolean swapsAxes() {
+        return this == ROTATE_90 || this == ROTATE_270 || this == FLIP_DIAGONAL || this == FLIP_ANTIDIAGONAL;
+    }
+
+    /**
+     * apply returns the packed rows of a transformed pattern. Only the living
+     * cells are visited, and rows without living cells are left null.
+     *
+     * @param rows   The packed rows of the pattern, rows may be null
+     * @param height The height of the pattern
+     * @param width  The width of the pattern
+     */
+    public long[][] apply(long[][] rows, int height, int width) {
+        if (this == IDENTITY) {
+            return rows;
+        }
+        int newHeight = swapsAxes() ? width : height;
+        int newWidth = swapsAxes() ? height : width;
+        long[][] transformed = new long[newHeight][];
+        for (int y = 0; y < height; y++) {
+            if (rows[y] == null) {
+                continue;
+            }
+            for (int i = 0; i < rows[y].length; i++) {
+                long word = rows[y][i];
+                while (word != 0) {
+                    int x = (i << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+
+                    int row = row(y, x, height, width);
+                    if (transformed[row] == null) {
+                        transformed[row] = new long[PackedRows.words(newWidth)];
+                    }
+                    PackedRows.set(transformed[row], column(y, x, height, width), true);
+                }
+            }
+        }
+        return transformed;
+    }
+
+    /**
+     * row returns the row a cell of a pattern moves to
+     */
+    private int row(int y, int x, int height, int width) {
+        switch (this) {
+            case ROTATE_90:
+            case FLIP_DIAGONAL:
+                return x;
+            case ROTATE_180:
+            case FLIP_VERTICAL:
+                return height - 1 - y;
+            case ROTATE_270:
+            case FLIP_ANTIDIAGONAL:
+                return width - 1 - x;
+            default:
+                return y;
+        }
+    }
+
+    /**
+     * column returns the column a cell of a pattern moves to
+     */
+    private int column(int y, int x, int height, int width) {
+        switch (this) {
+            case ROTATE_90:
+            case FLIP_ANTIDIAGONAL:
+                return height - 1 - y;
+            case ROTATE_180:
+            case FLIP_HORIZONTAL:
+                return width - 1 - x;
+            case ROTATE_270:
+            case FLIP_DIAGONAL:
+                return y;
+            default:
+                return x;
+        }
+    }
+}
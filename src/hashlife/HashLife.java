@@ -0,0 +1,461 @@
+package hashlife;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import engine.FastForward;
+import engine.PackedRows;
+import rule.Rule;
+
+/**
+ * HashLife advances a grid by huge numbers of generations using Gosper's
+ * algorithm. The grid is stored as a quadtree of canonical nodes (identical
+ * squares are shared through a hash-consed node cache), and every node
+ * memoizes its own future, so patterns with repetition in space or time can
+ * be advanced 2^k generations in a single step.
+ *
+ * HashLife runs on an unbounded plane: the grid is placed on the plane, and
+ * after advancing, the cells that ended up inside the grid are copied back.
+ * This matches the grid exactly as long as the pattern does not reach the
+ * edges of the grid.
+ *
+ * Memoized results only hold for one rule, so the node cache is emptied
+ * whenever the rule changes. The node cache holds at most maxNodes nodes.
+ * When it fills up in the middle of a step, the step starts over from the
+ * grid as it was before it, with an empty cache holding only the nodes of the
+ * grid, so that nodes from before and after emptying the cache are never
+ * mixed. A step that fills up the cache even then is split into two steps of
+ * half as many generations, down to single generations, which may go past
+ * the cap. The cache is also emptied after an advance if it is more than half
+ * full.
+ */
+public class HashLife implements FastForward {
+
+    /**
+     * DEFAULT_MAX_NODES is the default cap on the number of nodes in the
+     * cache, roughly 150 MB of nodes
+     */
+    public static final int DEFAULT_MAX_NODES = 2_000_000;
+
+    /**
+     * MIN_MAX_NODES is the smallest cap on the number of nodes in the cache,
+     * enough for a single generation of small patterns
+     */
+    public static final int MIN_MAX_NODES = 1024;
+
+    private static final Node DEAD = new Node(false);
+    private static final Node ALIVE = new Node(true);
+
+    /**
+     * MAX_LEVEL is the largest level a node can have
+     */
+    private static final int MAX_LEVEL = 62;
+
+    private final int maxNodes;
+    private HashMap<Node, Node> cache = new HashMap<Node, Node>();
+    private Node[] empty = new Node[MAX_LEVEL + 1];
+
+    /**
+     * bounded tells whether join throws CacheFull when the cache is full
+     */
+    private boolean bounded = true;
+
+    /**
+     * originY and originX are the position on the plane of the top left
+     * corner of the root being advanced
+     */
+    private long originY;
+    private long originX;
+
+    /**
+     * rule is the rule the memoized results of the cached nodes follow
+     */
+    private Rule rule;
+
+    public HashLife() {
+        this(DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * @param maxNodes The cap on the number of nodes in the node cache
+     */
+    public HashLife(int maxNodes) {
+        if (maxNodes < MIN_MAX_NODES) {
+            throw new IllegalArgumentException("The node cache must hold at least " + MIN_MAX_NODES + " nodes");
+        }
+        this.maxNodes = maxNodes;
+    }
+
+    @Override
+    public void advance(long[][] cells, int width, boolean wrap, Rule rule, long generations) {
+        int height = cells.length;
+        if (!rule.equals(this.rule)) {
+            collect();
+            this.rule = rule;
+        }
+
+        // The smallest root that covers the whole grid, placed with its top
+        // left corner on the top left corner of the grid
+        int level = 3;
+        while ((1L << level) < Math.max(width, height)) {
+            level++;
+        }
+
+        // The nodes of the grid are all needed, so building it may go past
+        // the cap
+        this.bounded = false;
+        Node root;
+        try {
+            root = build(cells, width, level, 0, 0);
+        } finally {
+            this.bounded = true;
+        }
+        this.originY = 0;
+        this.originX = 0;
+
+        for (int step = 62; step >= 0; step--) {
+            if ((generations & (1L << step)) != 0) {
+                root = advanceBy(root, step);
+            }
+        }
+
+        PackedRows.clear(cells);
+        write(root, cells, width, this.originY, this.originX);
+
+        if (this.cache.size() > this.maxNodes / 2) {
+            collect();
+        }
+    }
+
+    /**
+     * advanceBy returns the root after 2^step generations. If the cache fills
+     * up, the cache is emptied and the step starts over from a copy of the
+     * root in the empty cache, split in two halves if the cache fills up
+     * again.
+     */
+    private Node advanceBy(Node root, int step) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                return successorOfRoot(root, step);
+            } catch (CacheFull e) {
+                collect();
+                root = intern(root, new IdentityHashMap<Node, Node>());
+            }
+        }
+        if (step > 0) {
+            return advanceBy(advanceBy(root, step - 1), step - 1);
+        }
+        this.bounded = false;
+        try {
+            return successorOfRoot(root, step);
+        } finally {
+            this.bounded = true;
+        }
+    }
+
+    /**
+     * successorOfRoot returns the root after 2^step generations, padded
+     * first so that nothing can grow out of it, and moves the origin to the
+     * new root. The origin is only moved if the step completes.
+     */
+    private Node successorOfRoot(Node root, int step) {
+        if (root.population == 0) {
+            return root;
+        }
+
+        // Pad the root until the pattern is in its center 16th and the root
+        // is big enough to step 2^step generations at once, so that nothing
+        // can grow out of the center quarter returned by successor
+        long offset = 0;
+        while (root.level < step + 3 || !isPadded(root)) {
+            offset += 1L << (root.level - 1);
+            root = expand(root);
+        }
+        offset -= 1L << (root.level - 2);
+        root = successor(root, step);
+        this.originY -= offset;
+        this.originX -= offset;
+        return root;
+    }
+
+    /**
+     * intern returns the canonical node in the cache with the same cells as
+     * a node from before the cache was emptied. Copies holds the copies
+     * already made, so that shared nodes are only copied once.
+     */
+    private Node intern(Node node, IdentityHashMap<Node, Node> copies) {
+        if (node.level == 0) {
+            return node;
+        }
+        Node copy = copies.get(node);
+        if (copy == null) {
+            boolean bounded = this.bounded;
+            this.bounded = false;
+            try {
+                copy = join(
+                        intern(node.nw, copies),
+                        intern(node.ne, copies),
+                        intern(node.sw, copies),
+                        intern(node.se, copies));
+            } finally {
+                this.bounded = bounded;
+            }
+            copies.put(node, copy);
+        }
+        return copy;
+    }
+
+    /**
+     * getCacheSize returns the number of nodes in the node cache
+     */
+    public int getCacheSize() {
+        return this.cache.size();
+    }
+
+    /**
+     * collect empties the node cache so that nodes no longer in use can be
+     * garbage collected
+     */
+    public void collect() {
+        this.cache = new HashMap<Node, Node>();
+        this.empty = new Node[MAX_LEVEL + 1];
+    }
+
+    /**
+     * join returns the canonical node made of four quadrants
+     */
+    private Node join(Node nw, Node ne, Node sw, Node se) {
+        Node node = new Node(nw, ne, sw, se);
+        Node canonical = this.cache.get(node);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (this.cache.size() >= this.maxNodes && this.bounded) {
+            throw CacheFull.INSTANCE;
+        }
+        this.cache.put(node, node);
+        return node;
+    }
+
+    /**
+     * empty returns the canonical node of a level with no living cells
+     */
+    private Node empty(int level) {
+        if (level == 0) {
+            return DEAD;
+        }
+        Node node = this.empty[level];
+        if (node == null) {
+            Node e = empty(level - 1);
+            node = join(e, e, e, e);
+            this.empty[level] = node;
+        }
+        return node;
+    }
+
+    /**
+     * build creates the node of a level covering the cells of a packed grid
+     * from (y, x). Cells outside of the grid are dead.
+     */
+    private Node build(long[][] cells, int width, int level, int y, int x) {
+        int height = cells.length;
+        if (y >= height || x >= width) {
+            return empty(level);
+        }
+        if (level == 0) {
+            return PackedRows.get(cells[y], x) ? ALIVE : DEAD;
+        }
+
+        // A square 64 cells wide covers a single word of each row
+        if (level == 6) {
+            long bits = 0;
+            for (int row = y; row < Math.min(y + 64, height); row++) {
+                bits |= cells[row][x >>> 6];
+            }
+            if (bits == 0) {
+                return empty(level);
+            }
+        }
+
+        int half = 1 << (level - 1);
+        return join(
+                build(cells, width, level - 1, y, x),
+                build(cells, width, level - 1, y, x + half),
+                build(cells, width, level - 1, y + half, x),
+                build(cells, width, level - 1, y + half, x + half));
+    }
+
+    /**
+     * write sets the living cells of a node at (y, x) on the plane into a
+     * packed grid, skipping the cells outside of the grid
+     */
+    private void write(Node node, long[][] cells, int width, long y, long x) {
+        long size = 1L << node.level;
+        if (node.population == 0 || y >= cells.length || x >= width || y + size <= 0 || x + size <= 0) {
+            return;
+        }
+        if (node.level == 0) {
+            PackedRows.set(cells[(int) y], (int) x, true);
+            return;
+        }
+        long half = size >>> 1;
+        write(node.nw, cells, width, y, x);
+        write(node.ne, cells, width, y, x + half);
+        write(node.sw, cells, width, y + half, x);
+        write(node.se, cells, width, y + half, x + half);
+    }
+
+    /**
+     * expand returns a node one level up with the given node in its center
+     */
+    private Node expand(Node node) {
+        Node e = empty(node.level - 1);
+        return join(
+                join(e, e, e, node.nw),
+                join(e, e, node.ne, e),
+                join(e, node.sw, e, e),
+                join(node.se, e, e, e));
+    }
+
+    /**
+     * isPadded tells whether all the living cells of a node are in the
+     * square of a quarter of its side in its center
+     */
+    private static boolean isPadded(Node node) {
+        if (node.level < 3) {
+            return node.population == 0;
+        }
+        return node.population == node.nw.se.se.population
+                + node.ne.sw.sw.population
+                + node.sw.ne.ne.population
+                + node.se.nw.nw.population;
+    }
+
+    /**
+     * center returns the node of half the side in the center of a node
+     */
+    private Node center(Node node) {
+        return join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+    }
+
+    /**
+     * horizontalCenter returns the node centered between two side by side
+     * nodes
+     */
+    private Node horizontalCenter(Node w, Node e) {
+        return join(w.ne, e.nw, w.se, e.sw);
+    }
+
+    /**
+     * verticalCenter returns the node centered between two stacked nodes
+     */
+    private Node verticalCenter(Node n, Node s) {
+        return join(n.sw, n.se, s.nw, s.ne);
+    }
+
+    /**
+     * successor returns the center of a node, of half its side, after 2^step
+     * generations. The step can be at most level - 2: in that many
+     * generations, nothing outside of the node can reach its center.
+     */
+    private Node successor(Node node, int step) {
+        if (node.population == 0) {
+            return empty(node.level - 1);
+        }
+        if (node.result != null && node.resultStep == step) {
+            return node.result;
+        }
+
+        Node result;
+        if (node.level == 2) {
+            result = successorOfLeaf(node);
+        } else {
+            // Nine overlapping nodes of half the side cover the node
+            Node n00 = node.nw;
+            Node n01 = horizontalCenter(node.nw, node.ne);
+            Node n02 = node.ne;
+            Node n10 = verticalCenter(node.nw, node.sw);
+            Node n11 = center(node);
+            Node n12 = verticalCenter(node.ne, node.se);
+            Node n20 = node.sw;
+            Node n21 = horizontalCenter(node.sw, node.se);
+            Node n22 = node.se;
+
+            // At full speed each of the nine goes through the first half of
+            // the generations, otherwise only their centers are kept
+            boolean full = step == node.level - 2;
+            Node r00 = full ? successor(n00, step - 1) : center(n00);
+            Node r01 = full ? successor(n01, step - 1) : center(n01);
+            Node r02 = full ? successor(n02, step - 1) : center(n02);
+            Node r10 = full ? successor(n10, step - 1) : center(n10);
+            Node r11 = full ? successor(n11, step - 1) : center(n11);
+            Node r12 = full ? successor(n12, step - 1) : center(n12);
+            Node r20 = full ? successor(n20, step - 1) : center(n20);
+            Node r21 = full ? successor(n21, step - 1) : center(n21);
+            Node r22 = full ? successor(n22, step - 1) : center(n22);
+
+            // The four overlapping quadrants go through the rest
+            int rest = Math.min(step, node.level - 3);
+            result = join(
+                    successor(join(r00, r01, r10, r11), rest),
+                    successor(join(r01, r02, r11, r12), rest),
+                    successor(join(r10, r11, r20, r21), rest),
+                    successor(join(r11, r12, r21, r22), rest));
+        }
+
+        node.result = result;
+        node.resultStep = step;
+        return result;
+    }
+
+    /**
+     * successorOfLeaf returns the center 2x2 cells of a 4x4 node after one
+     * generation
+     */
+    private Node successorOfLeaf(Node node) {
+        // Bit (row * 4 + col) holds the cell at (row, col) of the node
+        int bits = 0;
+        Node[] quadrants = { node.nw, node.ne, node.sw, node.se };
+        for (int q = 0; q < 4; q++) {
+            int row = (q / 2) * 2;
+            int col = (q % 2) * 2;
+            Node quadrant = quadrants[q];
+            bits |= (int) quadrant.nw.population << (row * 4 + col);
+            bits |= (int) quadrant.ne.population << (row * 4 + col + 1);
+            bits |= (int) quadrant.sw.population << ((row + 1) * 4 + col);
+            bits |= (int) quadrant.se.population << ((row + 1) * 4 + col + 1);
+        }
+        return join(
+                nextCell(bits, 1, 1) ? ALIVE : DEAD,
+                nextCell(bits, 1, 2) ? ALIVE : DEAD,
+                nextCell(bits, 2, 1) ? ALIVE : DEAD,
+                nextCell(bits, 2, 2) ? ALIVE : DEAD);
+    }
+
+    /**
+     * nextCell applies the rule to the cell at (row, col) of a 4x4 square of
+     * bits
+     */
+    private boolean nextCell(int bits, int row, int col) {
+        int neighborhood = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                neighborhood = (neighborhood << 1) | ((bits >>> ((row + dy) * 4 + col + dx)) & 1);
+            }
+        }
+        return this.rule.next(neighborhood);
+    }
+
+    /**
+     * CacheFull is thrown by join when the node cache is full in the middle
+     * of a step, to start the step over with an empty cache
+     */
+    private static final class CacheFull extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final CacheFull INSTANCE = new CacheFull();
+
+        private CacheFull() {
+            super(null, null, false, false);
+        }
+    }
+}
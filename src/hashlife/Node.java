@@ -0,0 +1,70 @@
+package hashlife;
+
+/**
+ * Node is a square of 2^level x 2^level cells in a quadtree. Nodes are
+ * canonical: two nodes with the same contents are the same object, so a
+ * node's children are compared by identity and a node can memoize its own
+ * future. Level 0 nodes are single cells.
+ */
+final class Node {
+    final Node nw;
+    final Node ne;
+    final Node sw;
+    final Node se;
+    final int level;
+    final long population;
+    private final int hash;
+
+    /**
+     * result memoizes the center of this node after 2^resultStep generations
+     */
+    Node result;
+    int resultStep = -1;
+
+    /**
+     * Creates a single cell (level 0) node
+     */
+    Node(boolean alive) {
+        this.nw = this.ne = this.sw = this.se = null;
+        this.level = 0;
+        this.population = alive ? 1 : 0;
+        this.hash = alive ? 1 : 0;
+    }
+
+    /**
+     * Creates a node from its four quadrants, which share the same level
+     */
+    Node(Node nw, Node ne, Node sw, Node se) {
+        this.nw = nw;
+        this.ne = ne;
+        this.sw = sw;
+        this.se = se;
+        this.level = nw.level + 1;
+        this.population = nw.population + ne.population + sw.population + se.population;
+
+        int h = System.identityHashCode(nw);
+        h = h * 31 + System.identityHashCode(ne);
+        h = h * 31 + System.identityHashCode(sw);
+        h = h * 31 + System.identityHashCode(se);
+        this.hash = h;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Node)) {
+            return false;
+        }
+        Node other = (Node) o;
+        return this.level == other.level
+                && this.population == other.population
+                && this.nw == other.nw
+                && this.ne == other.ne
+                && this.sw == other.sw
+                && this.se == other.se;
+    }
+}
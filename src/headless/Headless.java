@@ -0,0 +1,431 @@
+package headless;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+import engine.Engine;
+import engine.PackedRows;
+import engine.TemporalBlocking;
+import grid.Grid;
+import grid.PeriodDetector;
+import grid.StampMode;
+import grid.Transform;
+import rleinput.RLEPattern;
+import rleinput.RLEWriter;
+import rule.Rule;
+import world.World;
+
+/**
+ * Headless runs the simulation without creating any Swing component, so that
+ * it can run on machines without a display, e.g. for batch experiments or to
+ * compare engines on the same input. It evolves the grid in a tight loop and
+ * reports the throughput and the final population.
+ */
+public class Headless {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: Life --headless [options]",
+            "  --pattern <file>  RLE pattern to place in the center of the grid",
+            "  --size <n>        height and width of the grid (default 100), at most 46340",
+            "                    unless --storage offheap or --blocked",
+            "  --wrap            wrap cells around the edges of the grid",
+            "  --gens <n>        number of generations to run (default 1000)",
+            "  --engine <name>   engine to evolve the grid with (default naive), heap storage",
+            "                    only",
+            "  --until-settled   stop once the grid is stable or oscillates, heap storage",
+            "                    only",
+            "  --blocked <k>     fast-forward by k generations at a time in bands of rows",
+            "                    that stay in the cache, on a bare board of bits without",
+            "                    afterlife, for grids larger than the cache",
+            "  --band <n>        rows of a band for --blocked (default fits a band in the",
+            "                    L2 cache)",
+            "  --storage <kind>  heap (default) or offheap, a board of bits outside of the",
+            "                    Java heap evolved with the swar kernel, for very large sizes",
+            "  --world <file>    run an off-heap board stored in a world file, created with",
+            "                    --size, --wrap and --pattern if it does not exist and",
+            "                    continued from its last checkpoint otherwise, where --size",
+            "                    and --wrap must match the file",
+            "  --checkpoint <n>  save the world file every n generations (default only at",
+            "                    the end, or when interrupted)",
+            "  --out <file>      write the final state as RLE");
+
+    private String patternFile;
+    private int size = 100;
+    private boolean sizeGiven = false;
+    private boolean wrap = false;
+    private int generations = 1000;
+    private String engineName;
+    private boolean untilSettled = false;
+    private int blockDepth = 0;
+    private int bandRows = 0;
+    private String outFile;
+    private boolean offHeap = false;
+    private String worldFile;
+    private int checkpointInterval = 0;
+
+    /**
+     * stopping is set when the process is interrupted, to stop evolving a
+     * world file at a checkpoint
+     */
+    private volatile boolean stopping = false;
+
+    /**
+     * run parses the options, runs the simulation and returns the exit code
+     * of the program: 0 on success, 1 if a file could not be read or written
+     * and 2 for invalid options
+     *
+     * @param args The command line arguments after --headless
+     */
+    public static int run(String[] args) {
+        Headless headless = new Headless();
+        try {
+            headless.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.printf("%s%n%s%n", e.getMessage(), USAGE);
+            return 2;
+        }
+
+        try {
+            return headless.simulate();
+        } catch (IllegalArgumentException e) {
+            System.err.printf("%s%n", e.getMessage());
+            return 2;
+        } catch (IOException e) {
+            System.err.printf("%s%n", e);
+            return 1;
+        }
+    }
+
+    /**
+     * parseArgs sets the options from the command line arguments
+     */
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--pattern":
+                    this.patternFile = value(args, ++i);
+                    break;
+                case "--size":
+                    this.size = intValue(args, ++i);
+                    this.sizeGiven = true;
+                    break;
+                case "--wrap":
+                    this.wrap = true;
+                    break;
+                case "--gens":
+                    this.generations = intValue(args, ++i);
+                    break;
+                case "--engine":
+                    this.engineName = value(args, ++i);
+                    break;
+                case "--until-settled":
+                    this.untilSettled = true;
+                    break;
+                case "--blocked":
+                    this.blockDepth = intValue(args, ++i);
+                    break;
+                case "--band":
+                    this.bandRows = intValue(args, ++i);
+                    break;
+                case "--out":
+                    this.outFile = value(args, ++i);
+                    break;
+                case "--storage":
+                    this.offHeap = storage(args, ++i);
+                    break;
+                case "--world":
+                    this.worldFile = value(args, ++i);
+                    this.offHeap = true;
+                    break;
+                case "--checkpoint":
+                    this.checkpointInterval = intValue(args, ++i);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option '" + args[i] + "'");
+            }
+        }
+        if (this.size < 1 || this.generations < 0 || this.checkpointInterval < 0) {
+            throw new IllegalArgumentException("Size must be positive, generations and checkpoint not negative");
+        }
+        if (this.blockDepth < 0 || this.bandRows < 0) {
+            throw new IllegalArgumentException("Blocked depth and band rows must not be negative");
+        }
+        if (this.offHeap && (this.engineName != null || this.untilSettled)) {
+            throw new IllegalArgumentException("--engine and --until-settled only apply to heap storage");
+        }
+        if (!this.offHeap && this.blockDepth == 0 && this.size > Grid.MAX_SIDE) {
+            throw new IllegalArgumentException(String.format(
+                    "Heap grids are at most %d cells a side, see --storage offheap or --blocked", Grid.MAX_SIDE));
+        }
+        if (this.blockDepth > 0 && (this.engineName != null || this.untilSettled || this.offHeap)) {
+            throw new IllegalArgumentException(
+                    "--blocked cannot be combined with --engine, --until-settled or off-heap storage");
+        }
+        if (this.engineName == null) {
+            this.engineName = "naive";
+        }
+    }
+
+    /**
+     * simulate loads the pattern, evolves the grid and reports the results
+     */
+    private int simulate() throws IOException {
+        if (this.offHeap) {
+            return simulateWorld();
+        }
+
+        if (this.blockDepth > 0) {
+            return fastForward();
+        }
+
+        Engine engine = Engine.forName(this.engineName);
+        Grid grid = new Grid(this.size, engine);
+        grid.setWrap(this.wrap);
+
+        if (this.patternFile != null) {
+            RLEPattern pattern = RLEPattern.read(Path.of(this.patternFile));
+            if (pattern.getWidth() > grid.getWidth() || pattern.getHeight() > grid.getHeight()) {
+                System.err.printf("Grid is too small for pattern; w: %d h: %d%n", pattern.getWidth(),
+                        pattern.getHeight());
+                return 2;
+            }
+
+            grid.setRule(pattern.getRule());
+            int offsetRow = (grid.getHeight() / 2) - (pattern.getHeight() / 2);
+            int offsetCol = (grid.getWidth() / 2) - (pattern.getWidth() / 2);
+            pattern.stampOnto(grid, offsetRow, offsetCol, StampMode.SET, Transform.IDENTITY);
+        }
+
+        System.out.printf("Running %d generations of %s on a %dx%d grid (wrap %s) with the %s engine%n",
+                this.generations, grid.getRule(), this.size, this.size, this.wrap ? "on" : "off", this.engineName);
+
+        // The hash of the grid is kept up to date from its changes, so
+        // checking for a period costs next to nothing
+        PeriodDetector periods = new PeriodDetector();
+        int ran = 0;
+        long start = System.nanoTime();
+        while (ran < this.generations) {
+            grid.evolve();
+            ran++;
+            int settled = periods.getPeriod();
+            int period = periods.check(grid);
+            if (period != 0 && settled == 0) {
+                System.out.printf("Generation %d is %s%n", grid.getGeneration(), PeriodDetector.describe(period));
+                if (this.untilSettled) {
+                    break;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        double seconds = elapsed / 1e9;
+        System.out.printf("Ran %d generations in %.3fs (%.1f gen/s)%n", ran, seconds,
+                seconds > 0 ? ran / seconds : 0);
+        System.out.printf("Final population: %d%n", grid.getPopulation());
+
+        if (this.outFile != null) {
+            try (Writer out = Files.newBufferedWriter(Path.of(this.outFile))) {
+                RLEWriter.write(grid, out);
+            }
+            System.out.printf("Wrote generation %d to %s%n", grid.getGeneration(), this.outFile);
+        }
+        return 0;
+    }
+
+    /**
+     * fastForward loads the pattern onto bare packed rows, advances them by
+     * all the generations at once with temporal blocking and reports the
+     * results. Unlike a Grid, the rows hold no afterlife planes, so they
+     * take a bit per cell and grids far larger than the cache fit in the
+     * heap.
+     */
+    private int fastForward() throws IOException {
+        long[][] cells;
+        try {
+            cells = PackedRows.alloc(this.size, this.size);
+        } catch (OutOfMemoryError e) {
+            System.err.printf("Not enough memory for the grid, see -Xmx: %s%n", e.getMessage());
+            return 1;
+        }
+
+        Rule rule = Rule.CONWAY;
+        if (this.patternFile != null) {
+            RLEPattern pattern = RLEPattern.read(Path.of(this.patternFile));
+            if (pattern.getWidth() > this.size || pattern.getHeight() > this.size) {
+                System.err.printf("Grid is too small for pattern; w: %d h: %d%n", pattern.getWidth(),
+                        pattern.getHeight());
+                return 2;
+            }
+
+            rule = pattern.getRule();
+            int offsetRow = (this.size / 2) - (pattern.getHeight() / 2);
+            int offsetCol = (this.size / 2) - (pattern.getWidth() / 2);
+            pattern.stampOnto(cells, this.size, offsetRow, offsetCol);
+        }
+
+        System.out.printf("Fast-forwarding %d generations of %s on a %dx%d grid (wrap %s), %d at a time%n",
+                this.generations, rule, this.size, this.size, this.wrap ? "on" : "off", this.blockDepth);
+
+        long start = System.nanoTime();
+        new TemporalBlocking(this.bandRows, this.blockDepth).advance(cells, this.size, this.wrap, rule,
+                this.generations);
+        long elapsed = System.nanoTime() - start;
+
+        long population = 0;
+        for (long[] row : cells) {
+            for (long word : row) {
+                population += Long.bitCount(word);
+            }
+        }
+        double seconds = elapsed / 1e9;
+        System.out.printf("Ran %d generations in %.3fs (%.1f gen/s)%n", this.generations, seconds,
+                seconds > 0 ? this.generations / seconds : 0);
+        System.out.printf("Final population: %d%n", population);
+
+        if (this.outFile != null) {
+            try (Writer out = Files.newBufferedWriter(Path.of(this.outFile))) {
+                RLEWriter.write(cells, this.size, this.generations, rule, out);
+            }
+            System.out.printf("Wrote generation %d to %s%n", this.generations, this.outFile);
+        }
+        return 0;
+    }
+
+    /**
+     * simulateWorld loads the pattern, evolves an off-heap world and reports
+     * the results. A world file is created if it does not exist and
+     * continued from its last checkpoint otherwise.
+     */
+    private int simulateWorld() throws IOException {
+        World world;
+        if (this.worldFile == null) {
+            world = new World(this.size, this.size);
+            world.setWrap(this.wrap);
+        } else if (Files.exists(Path.of(this.worldFile))) {
+            if (this.patternFile != null) {
+                throw new IllegalArgumentException("--pattern only applies to a new world file");
+            }
+            world = World.open(Path.of(this.worldFile));
+            boolean sizeMatches = world.getHeight() == this.size && world.getWidth() == this.size;
+            if ((this.sizeGiven && !sizeMatches) || (this.wrap && !world.isWrap())) {
+                world.close();
+                throw new IllegalArgumentException(String.format(
+                        "%s is a %dx%d world with wrap %s, --size and --wrap must match it", this.worldFile,
+                        world.getHeight(), world.getWidth(), world.isWrap() ? "on" : "off"));
+            }
+            System.out.printf("Opened %s at generation %d%n", this.worldFile, world.getGeneration());
+        } else {
+            world = World.create(Path.of(this.worldFile), this.size, this.size);
+            world.setWrap(this.wrap);
+        }
+
+        // Interrupting the process stops a world file at a checkpoint, so
+        // it can be continued
+        CountDownLatch closed = new CountDownLatch(1);
+        Thread hook = new Thread(() -> {
+            this.stopping = true;
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        if (world.isMapped()) {
+            Runtime.getRuntime().addShutdownHook(hook);
+        }
+
+        try (world) {
+            if (this.patternFile != null) {
+                RLEPattern pattern = RLEPattern.read(Path.of(this.patternFile));
+                if (pattern.getWidth() > world.getWidth() || pattern.getHeight() > world.getHeight()) {
+                    System.err.printf("Grid is too small for pattern; w: %d h: %d%n", pattern.getWidth(),
+                            pattern.getHeight());
+                    return 2;
+                }
+
+                world.setRule(pattern.getRule());
+                int offsetRow = (world.getHeight() / 2) - (pattern.getHeight() / 2);
+                int offsetCol = (world.getWidth() / 2) - (pattern.getWidth() / 2);
+                pattern.stampOnto(world, offsetRow, offsetCol);
+            }
+
+            System.out.printf("Running %d generations of %s on a %dx%d off-heap world (wrap %s)%n",
+                    this.generations, world.getRule(), world.getHeight(), world.getWidth(),
+                    world.isWrap() ? "on" : "off");
+
+            long start = System.nanoTime();
+            int ran = 0;
+            while (ran < this.generations && !this.stopping) {
+                world.evolve();
+                ran++;
+                if (this.checkpointInterval > 0 && ran % this.checkpointInterval == 0) {
+                    world.checkpoint();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            double seconds = elapsed / 1e9;
+            System.out.printf("Ran %d generations in %.3fs (%.1f gen/s)%n", ran, seconds,
+                    seconds > 0 ? ran / seconds : 0);
+            System.out.printf("Final population: %d%n", world.getPopulation());
+
+            if (this.outFile != null) {
+                try (Writer out = Files.newBufferedWriter(Path.of(this.outFile))) {
+                    RLEWriter.write(world, out);
+                }
+                System.out.printf("Wrote generation %d to %s%n", world.getGeneration(), this.outFile);
+            }
+            if (world.isMapped()) {
+                System.out.printf("Saved generation %d to %s%n", world.getGeneration(), this.worldFile);
+            }
+            return 0;
+        } catch (OutOfMemoryError e) {
+            System.err.printf("Not enough memory for the world, see -XX:MaxDirectMemorySize: %s%n", e.getMessage());
+            return 1;
+        } finally {
+            closed.countDown();
+            if (world.isMapped() && !this.stopping) {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            }
+        }
+    }
+
+    /**
+     * storage returns whether the value of a --storage option is offheap
+     */
+    private static boolean storage(String[] args, int i) {
+        switch (value(args, i)) {
+            case "heap":
+                return false;
+            case "offheap":
+                return true;
+            default:
+                throw new IllegalArgumentException("Option '--storage' takes heap or offheap, got '" + args[i] + "'");
+        }
+    }
+
+    /**
+     * value returns the value of an option
+     */
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for option '" + args[i - 1] + "'");
+        }
+        return args[i];
+    }
+
+    /**
+     * intValue returns the integer value of an option
+     */
+    private static int intValue(String[] args, int i) {
+        String value = value(args, i);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option '" + args[i - 1] + "' takes an integer, got '" + value + "'");
+        }
+    }
+}
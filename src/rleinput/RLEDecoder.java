@@ -0,0 +1,280 @@
+package rleinput;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import engine.PackedRows;
+import rule.Rule;
+
+/**
+ * RLEDecoder decodes Run Length Encoded text in a single pass over a small
+ * buffer, from a Reader or from the bytes of a (memory-mapped) file. Runs of
+ * living cells are written straight into the packed rows of the pattern as
+ * ranges of bits, and rows without living cells are never allocated, so the
+ * memory used depends on the pattern rather than on the size of the text.
+ * See https://conwaylife.com/wiki/Run_Length_Encoded
+ */
+class RLEDecoder {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * MAX_SIDE is the largest width or height of a pattern, and MAX_CELLS
+     * the largest number of cells, 512 MB of rows, so that a header alone
+     * cannot make the decoder allocate more memory than any grid or world
+     * could hold
+     */
+    static final int MAX_SIDE = 1 << 20;
+    static final long MAX_CELLS = 1L << 32;
+
+    /**
+     * HEADER matches the header line, with the width and height of the
+     * pattern and an optional rule
+     */
+    private static final Pattern HEADER = Pattern
+            .compile("^x\\s*=\\s*([0-9]+)\\s*,\\s*y\\s*=\\s*([0-9]+)(?:\\s*,\\s*rule\\s*=\\s*(\\S+))?");
+
+    /**
+     * Only one of reader and bytes is set, depending on the input
+     */
+    private final Reader reader;
+    private final ByteBuffer bytes;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private byte[] byteBuffer;
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * offset is the number of characters read before the buffer, line is the
+     * line of the last character read, starting at 1, and lineStart is the
+     * offset of the first character of that line
+     */
+    private long offset = 0;
+    private int line = 1;
+    private long lineStart = 0;
+
+    RLEDecoder(Reader reader) {
+        this.reader = reader;
+        this.bytes = null;
+    }
+
+    /**
+     * @param bytes The text as ASCII (or any ASCII compatible encoding)
+     */
+    RLEDecoder(ByteBuffer bytes) {
+        this.reader = null;
+        this.bytes = bytes;
+    }
+
+    /**
+     * decode reads the whole pattern. Text without a header and without any
+     * cells is an empty pattern.
+     *
+     * @throws RLEFormatException if the text is malformed
+     */
+    RLEPattern decode() throws IOException {
+        // Comment lines and blank lines may come before the header
+        int c;
+        while ((c = next()) != 'x') {
+            if (c == -1) {
+                return new RLEPattern(0, 0, Rule.CONWAY, new long[0][]);
+            } else if (c == '#' && column() == 1) {
+                skipLine();
+            } else if (!Character.isWhitespace(c)) {
+                throw error("expected the header 'x = <width>, y = <height>' before the pattern");
+            }
+        }
+
+        int headerLine = this.line;
+        Matcher header = HEADER.matcher("x" + readLine());
+        if (!header.find()) {
+            throw new RLEFormatException("invalid header, expected 'x = <width>, y = <height>, rule = <rule>'",
+                    headerLine, 1);
+        }
+        int width;
+        int height;
+        try {
+            width = Integer.parseInt(header.group(1));
+            height = Integer.parseInt(header.group(2));
+        } catch (NumberFormatException e) {
+            throw new RLEFormatException("pattern dimensions are too large", headerLine, 1);
+        }
+        if (width > MAX_SIDE || height > MAX_SIDE) {
+            throw new RLEFormatException(String.format("pattern dimensions are too large, at most %d cells a side",
+                    MAX_SIDE), headerLine, 1);
+        }
+        if ((long) width * height > MAX_CELLS) {
+            throw new RLEFormatException(String.format("pattern dimensions are too large, at most %d cells",
+                    MAX_CELLS), headerLine, 1);
+        }
+
+        // Patterns without a rule are Conway's Life
+        Rule rule = Rule.CONWAY;
+        if (header.group(3) != null) {
+            try {
+                rule = Rule.parse(header.group(3));
+            } catch (IllegalArgumentException e) {
+                throw new RLEFormatException(e.getMessage(), headerLine, header.start(3) + 1);
+            }
+        }
+
+        return new RLEPattern(width, height, rule, decodeCells(width, height));
+    }
+
+    /**
+     * decodeCells reads the runs of cells after the header up to the '!'
+     * that ends the pattern. Cells past the dimensions given in the header
+     * are ignored.
+     */
+    private long[][] decodeCells(int width, int height) throws IOException {
+        long[][] rows = new long[height][];
+
+        long run = 0;
+        long row = 0;
+        long col = 0;
+        int c = -1;
+        while (this.position < this.limit || fill()) {
+            // Characters are read straight from the buffer, this is the hot
+            // loop for large patterns
+            c = this.buffer[this.position++];
+            if (c == '!') {
+                break;
+            }
+            if (c >= '0' && c <= '9') {
+                run = run * 10 + c - '0';
+                if (run > Integer.MAX_VALUE) {
+                    throw error("run count is too large");
+                }
+                continue;
+            }
+
+            // Minimum run count of 1 (might still be 0 for parser)
+            long count = Math.max(run, 1);
+            if (c == 'b') {
+                col += count;
+            } else if (c == 'o') {
+                if (row < height && col < width) {
+                    int y = (int) row;
+                    if (rows[y] == null) {
+                        rows[y] = new long[PackedRows.words(width)];
+                    }
+                    PackedRows.fill(rows[y], (int) col, (int) Math.min(col + count, width));
+                }
+                col += count;
+            }
+            // Line breaks, e.g 5$ means "finish the current row and insert
+            // four blank rows"
+            // cf https://golly.sourceforge.io/Help/formats.html#rle
+            else if (c == '$') {
+                row += count;
+                col = 0;
+            } else if (c == '\n') {
+                // Line breaks do not end a run count
+                newLine();
+                continue;
+            } else if (c == '#' && column() == 1 && run == 0) {
+                skipLine();
+            } else if (!Character.isWhitespace(c)) {
+                throw error(String.format("unexpected character '%c', expected a run of 'b', 'o' or '$'", c));
+            } else {
+                // Whitespace does not end a run count
+                continue;
+            }
+            run = 0;
+        }
+
+        if (c != '!' && run > 0) {
+            throw error("run count at the end of the text");
+        }
+        return rows;
+    }
+
+    /**
+     * error returns an error at the last character read
+     */
+    private RLEFormatException error(String message) {
+        return new RLEFormatException(message, this.line, column());
+    }
+
+    /**
+     * column returns the column of the last character read, starting at 1
+     */
+    private int column() {
+        return (int) (this.offset + this.position - this.lineStart);
+    }
+
+    /**
+     * newLine starts a new line after a line break was read
+     */
+    private void newLine() {
+        this.line++;
+        this.lineStart = this.offset + this.position;
+    }
+
+    /**
+     * readLine returns the rest of the current line
+     */
+    private String readLine() throws IOException {
+        StringBuilder text = new StringBuilder();
+        int c;
+        while ((c = next()) != -1 && c != '\n') {
+            text.append((char) c);
+        }
+        return text.toString();
+    }
+
+    /**
+     * skipLine skips the rest of the current line
+     */
+    private void skipLine() throws IOException {
+        int c;
+        do {
+            c = next();
+        } while (c != -1 && c != '\n');
+    }
+
+    /**
+     * next returns the next character of the text, or -1 at the end of it
+     */
+    private int next() throws IOException {
+        if (this.position == this.limit && !fill()) {
+            return -1;
+        }
+        char c = this.buffer[this.position++];
+        if (c == '\n') {
+            newLine();
+        }
+        return c;
+    }
+
+    /**
+     * fill reads the next part of the text into the buffer, returning false
+     * at the end of it
+     */
+    private boolean fill() throws IOException {
+        int read;
+        if (this.reader != null) {
+            read = this.reader.read(this.buffer, 0, this.buffer.length);
+        } else {
+            read = Math.min(this.bytes.remaining(), this.buffer.length);
+            if (this.byteBuffer == null) {
+                this.byteBuffer = new byte[BUFFER_SIZE];
+            }
+            this.bytes.get(this.byteBuffer, 0, read);
+            for (int i = 0; i < read; i++) {
+                this.buffer[i] = (char) (this.byteBuffer[i] & 0xff);
+            }
+        }
+        if (read <= 0) {
+            return false;
+        }
+        this.offset += this.limit;
+        this.position = 0;
+        this.limit = read;
+        return true;
+    }
+}
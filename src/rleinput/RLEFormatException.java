@@ -0,0 +1,31 @@
+package rleinput;
+
+/**
+ * RLEFormatException reports malformed Run Length Encoded text, with the
+ * line and column the problem was found at
+ */
+public class RLEFormatException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+    private final int column;
+
+    /**
+     * @param message What is wrong with the text
+     * @param line    The line of the problem, starting at 1
+     * @param column  The column of the problem, starting at 1
+     */
+    public RLEFormatException(String message, int line, int column) {
+        super(String.format("RLE line %d, column %d: %s", line, column, message));
+        this.line = line;
+        this.column = column;
+    }
+
+    public int getLine() {
+        return this.line;
+    }
+
+    public int getColumn() {
+        return this.column;
+    }
+}
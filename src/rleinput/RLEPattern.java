@@ -0,0 +1,168 @@
+package rleinput;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import engine.PackedRows;
+import grid.Grid;
+import grid.StampMode;
+import grid.Transform;
+import rule.Rule;
+import world.World;
+
+/**
+ * RLEPattern is a pattern read from Run Length Encoded text, with its
+ * dimensions and rule. It does not depend on Swing, so patterns can be
+ * loaded without a display. See https://conwaylife.com/wiki/Run_Length_Encoded
+ */
+public class RLEPattern {
+    private final int width;
+    private final int height;
+    private final Rule rule;
+
+    /**
+     * rows holds the cells of the pattern as bit-packed rows (see
+     * PackedRows). Rows without living cells may be null.
+     */
+    private final long[][] rows;
+
+    RLEPattern(int width, int height, Rule rule, long[][] rows) {
+        this.width = width;
+        this.height = height;
+        this.rule = rule;
+        this.rows = rows;
+    }
+
+    /**
+     * @return The width of the pattern in number of cells
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return The height of the pattern in number of cells
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * @return The rule given in the header, B3/S23 if there was none
+     */
+    public Rule getRule() {
+        return this.rule;
+    }
+
+    public boolean isAlive(int y, int x) {
+        return this.rows[y] != null && PackedRows.get(this.rows[y], x);
+    }
+
+    /**
+     * getPopulation returns the number of living cells of the pattern
+     */
+    public long getPopulation() {
+        long population = 0;
+        for (long[] row : this.rows) {
+            if (row == null) {
+                continue;
+            }
+            for (long word : row) {
+                population += Long.bitCount(word);
+            }
+        }
+        return population;
+    }
+
+    /**
+     * stampOnto places the pattern onto a grid as a single edit, see
+     * Grid.stamp. The rule of the grid is not changed.
+     *
+     * @param top  The row of the grid the top of the pattern is placed on
+     * @param left The column of the grid the left of the pattern is placed on
+     * @return The number of cells that changed
+     */
+    public long stampOnto(Grid grid, int top, int left, StampMode mode, Transform transform) {
+        return grid.stamp(this.rows, this.height, this.width, top, left, mode, transform);
+    }
+
+    /**
+     * stampOnto sets the living cells of the pattern to alive on an off-heap
+     * world, see World.stamp. The rule of the world is not changed.
+     */
+    public void stampOnto(World world, int top, int left) {
+        world.stamp(this.rows, this.height, top, left);
+    }
+
+    /**
+     * stampOnto sets the living cells of the pattern to alive on bit-packed
+     * rows (see PackedRows). Cells that fall outside of the rows are dropped.
+     *
+     * @param width The width of the rows in number of cells
+     */
+    public void stampOnto(long[][] cells, int width, int top, int left) {
+        long[] shifted = new long[PackedRows.words(width)];
+        int bottom = (int) Math.min(cells.length, (long) top + this.height);
+        for (int y = Math.max(0, top); y < bottom; y++) {
+            if (this.rows[y - top] == null) {
+                continue;
+            }
+            PackedRows.shift(this.rows[y - top], left, shifted, width);
+            for (int i = 0; i < shifted.length; i++) {
+                cells[y][i] |= shifted[i];
+            }
+        }
+    }
+
+    /**
+     * Parse an RLE string into a pattern. Cells past the dimensions given in
+     * the header are ignored.
+     *
+     * @param text The RLE text, header and pattern lines
+     * @return The parsed pattern
+     * @throws RLEFormatException if the text is malformed
+     */
+    public static RLEPattern parse(String text) {
+        try {
+            return read(new StringReader(text));
+        } catch (IOException e) {
+            // A StringReader does not throw
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * read decodes an RLE pattern from a reader as it is read, without
+     * holding the text in memory
+     *
+     * @throws RLEFormatException if the text is malformed
+     */
+    public static RLEPattern read(Reader reader) throws IOException {
+        return new RLEDecoder(reader).decode();
+    }
+
+    /**
+     * read decodes an RLE pattern from a file, which is memory-mapped rather
+     * than read into the heap
+     *
+     * @throws RLEFormatException if the text is malformed
+     */
+    public static RLEPattern read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                // Too large to map at once
+                try (Reader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
+                    return read(reader);
+                }
+            }
+            return new RLEDecoder(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())).decode();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package rleinput;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import engine.PackedRows;
+import grid.Grid;
+import rule.Rule;
+import world.World;
+
+/**
+ * RLEWriter writes the living cells of a grid (or off-heap world, or packed
+ * rows) as Run Length Encoded text that RLEPattern (or any other Life
+ * program) can read back. Only the bounding box of the living cells is written. It does not
+ * depend on Swing.
+ */
+public class RLEWriter {
+
+    /**
+     * MAX_LINE_LENGTH is the longest a pattern line may be, as recommended by
+     * the RLE format
+     */
+    private static final int MAX_LINE_LENGTH = 70;
+
+    /**
+     * Cells is a board whose living cells can be written, a Grid or a World
+     */
+    private interface Cells {
+        boolean isAlive(int y, int x);
+    }
+
+    private final Writer out;
+    private int lineLength = 0;
+
+    private RLEWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * write writes the living cells of a grid, with the generation in a
+     * comment line and the rule in the header
+     */
+    public static void write(Grid grid, Writer out) throws IOException {
+        write(grid.getHeight(), grid.getWidth(), grid.getGeneration(), grid.getRule(), grid::isAlive, out);
+    }
+
+    /**
+     * write writes the living cells of an off-heap world, with the
+     * generation in a comment line and the rule in the header
+     */
+    public static void write(World world, Writer out) throws IOException {
+        write(world.getHeight(), world.getWidth(), world.getGeneration(), world.getRule(), world::isAlive, out);
+    }
+
+    /**
+     * write writes the living cells of bit-packed rows (see PackedRows), with
+     * the generation in a comment line and the rule in the header
+     */
+    public static void write(long[][] rows, int width, int generation, Rule rule, Writer out) throws IOException {
+        write(rows.length, width, generation, rule, (y, x) -> PackedRows.get(rows[y], x), out);
+    }
+
+    private static void write(int height, int width, int generation, Rule rule, Cells cells, Writer out)
+            throws IOException {
+        // Bounding box of the living cells
+        int top = height;
+        int bottom = -1;
+        int left = width;
+        int right = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (cells.isAlive(y, x)) {
+                    top = Math.min(top, y);
+                    bottom = y;
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                }
+            }
+        }
+
+        out.write(String.format("#C Generation %d%n", generation));
+        if (bottom < 0) {
+            out.write(String.format("x = 0, y = 0, rule = %s%n!%n", rule));
+            return;
+        }
+        out.write(String.format("x = %d, y = %d, rule = %s%n", right - left + 1, bottom - top + 1, rule));
+
+        RLEWriter writer = new RLEWriter(out);
+        int blankRows = 0;
+        for (int y = top; y <= bottom; y++) {
+            // Runs of dead cells at the end of a row are left out
+            int end = right;
+            while (end >= left && !cells.isAlive(y, end)) {
+                end--;
+            }
+            if (end < left) {
+                blankRows++;
+                continue;
+            }
+            if (y > top) {
+                writer.run(blankRows + 1, '$');
+            }
+            blankRows = 0;
+
+            int x = left;
+            while (x <= end) {
+                boolean alive = cells.isAlive(y, x);
+                int length = 0;
+                while (x <= end && cells.isAlive(y, x) == alive) {
+                    length++;
+                    x++;
+                }
+                writer.run(length, alive ? 'o' : 'b');
+            }
+        }
+        writer.run(1, '!');
+        out.write(System.lineSeparator());
+    }
+
+    /**
+     * run writes a run of a tag, e.g. "3o", starting a new line first if it
+     * would not fit on the current one
+     */
+    private void run(int length, char tag) throws IOException {
+        String token = length > 1 ? length + String.valueOf(tag) : String.valueOf(tag);
+        if (this.lineLength + token.length() > MAX_LINE_LENGTH) {
+            this.out.write(System.lineSeparator());
+            this.lineLength = 0;
+        }
+        this.out.write(token);
+        this.lineLength += token.length();
+    }
+}
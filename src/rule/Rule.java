@@ -0,0 +1,362 @@
+package rule;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rule is a Life-like cellular automaton rule, compiled from a rulestring
+ * into a lookup table of the next state of a cell for each of the 512
+ * possible 3x3 neighborhoods.
+ *
+ * Rulestrings are either outer totalistic, where only the number of living
+ * neighbors matters (e.g. "B3/S23" for Conway's Life, also written "23/3"),
+ * or isotropic non-totalistic in Hensel notation, where letters after a
+ * count pick which arrangements of that many neighbors apply (e.g.
+ * "B2-a/S12"), see https://conwaylife.com/wiki/Isotropic_non-totalistic_rule
+ *
+ * Rules where cells are born with 0 neighbors are not supported: they would
+ * fill the unbounded plane that some engines run on.
+ */
+public final class Rule {
+
+    /**
+     * CENTER is the bit of a neighborhood index holding the cell itself. Bit
+     * 8 - (3 * row + col) of an index holds the cell at (row, col) of the
+     * neighborhood, i.e. the cells are read row by row from the top left,
+     * most significant bit first.
+     */
+    public static final int CENTER = 1 << 4;
+
+    /**
+     * RING holds the bits of the 8 neighbors in a neighborhood index, going
+     * clockwise from the north: N, NE, E, SE, S, SW, W, NW. Bit r of a ring
+     * configuration is the neighbor at RING[r].
+     */
+    private static final int[] RING = { 1 << 7, 1 << 6, 1 << 3, 1 << 0, 1 << 1, 1 << 2, 1 << 5, 1 << 8 };
+
+    /**
+     * LETTERS holds the Hensel letters in the order they are written in, for
+     * each count of neighbors
+     */
+    private static final String LETTERS = "cekainyqjrtwz";
+
+    /**
+     * REPRESENTATIVES holds one configuration of each Hensel letter up to 4
+     * neighbors, as a count, a letter and the ring positions of the living
+     * neighbors. Every rotation and reflection of a configuration has its
+     * letter, and a configuration of 5 to 7 neighbors has the letter of the
+     * dead neighbors' configuration.
+     */
+    private static final String[] REPRESENTATIVES = {
+            "1e0", "1c1",
+            "2a01", "2e02", "2k03", "2i04", "2c13", "2n15",
+            "3a012", "3n013", "3r014", "3q015", "3j016", "3i017", "3e024", "3k025", "3y035", "3c135",
+            "4a0123", "4r0124", "4q0125", "4i0134", "4y0135", "4k0136", "4n0137", "4z0145", "4j0146",
+            "4t0147", "4w0156", "4e0246", "4c1357",
+    };
+
+    /**
+     * LETTER_OF holds the Hensel letter of every ring configuration, or 0 for
+     * configurations of 0 and 8 neighbors, which have no letter
+     */
+    private static final char[] LETTER_OF = henselLetters();
+
+    private static final Pattern BIRTH_FIRST = Pattern.compile("[Bb]([0-8cekainyqjrtwz-]*)/?[Ss]([0-8cekainyqjrtwz-]*)");
+    private static final Pattern SURVIVAL_FIRST = Pattern.compile("[Ss]([0-8cekainyqjrtwz-]*)/?[Bb]([0-8cekainyqjrtwz-]*)");
+    private static final Pattern NUMBERS_ONLY = Pattern.compile("([0-8]*)/([0-8]*)");
+
+    /**
+     * CONWAY is Conway's Game of Life, B3/S23
+     */
+    public static final Rule CONWAY = parse("B3/S23");
+
+    /**
+     * table holds the next state of a cell for each neighborhood index
+     */
+    private final boolean[] table;
+
+    private final boolean totalistic;
+    private final int birthCounts;
+    private final int survivalCounts;
+    private final String name;
+
+    private Rule(boolean[] table) {
+        this.table = table;
+
+        // The rule is totalistic if every configuration of a count of
+        // neighbors leads to the same state
+        int birthCounts = 0;
+        int survivalCounts = 0;
+        boolean totalistic = true;
+        for (int ring = 0; ring < 256; ring++) {
+            int count = Integer.bitCount(ring);
+            boolean born = table[index(ring, false)];
+            boolean survives = table[index(ring, true)];
+            if (born != table[index((1 << count) - 1, false)]
+                    || survives != table[index((1 << count) - 1, true)]) {
+                totalistic = false;
+            }
+            birthCounts |= born ? 1 << count : 0;
+            survivalCounts |= survives ? 1 << count : 0;
+        }
+        this.totalistic = totalistic;
+        this.birthCounts = totalistic ? birthCounts : 0;
+        this.survivalCounts = totalistic ? survivalCounts : 0;
+        this.name = "B" + describe(false) + "/S" + describe(true);
+    }
+
+    /**
+     * parse compiles a rulestring, ignoring any bounded grid suffix such as
+     * ":T100,100"
+     *
+     * @param rulestring The rule, e.g. "B3/S23", "b36/s23", "23/3" or
+     *                   "B2-a/S12"
+     * @return The compiled rule
+     * @throws IllegalArgumentException If the rulestring is not valid
+     */
+    public static Rule parse(String rulestring) {
+        String rule = rulestring.trim();
+        int colon = rule.indexOf(':');
+        if (colon >= 0) {
+            rule = rule.substring(0, colon);
+        }
+
+        String birth;
+        String survival;
+        Matcher m;
+        if ((m = BIRTH_FIRST.matcher(rule)).matches()) {
+            birth = m.group(1);
+            survival = m.group(2);
+        } else if ((m = SURVIVAL_FIRST.matcher(rule)).matches()) {
+            survival = m.group(1);
+            birth = m.group(2);
+        } else if ((m = NUMBERS_ONLY.matcher(rule)).matches()) {
+            survival = m.group(1);
+            birth = m.group(2);
+        } else {
+            throw new IllegalArgumentException("Invalid rule '" + rulestring + "'");
+        }
+
+        boolean[] born = parseConfigurations(birth, rulestring);
+        boolean[] survives = parseConfigurations(survival, rulestring);
+        if (born[0]) {
+            throw new IllegalArgumentException("Rules with B0 are not supported, got '" + rulestring + "'");
+        }
+
+        boolean[] table = new boolean[512];
+        for (int ring = 0; ring < 256; ring++) {
+            table[index(ring, false)] = born[ring];
+            table[index(ring, true)] = survives[ring];
+        }
+        return new Rule(table);
+    }
+
+    /**
+     * next returns the next state of the cell at the center of a
+     * neighborhood
+     *
+     * @param neighborhood The neighborhood index, see CENTER
+     */
+    public boolean next(int neighborhood) {
+        return this.table[neighborhood];
+    }
+
+    /**
+     * isTotalistic tells whether the next state of a cell only depends on its
+     * state and on its number of living neighbors
+     */
+    public boolean isTotalistic() {
+        return this.totalistic;
+    }
+
+    /**
+     * getBirthCounts returns the counts of neighbors a dead cell is born with
+     * in a totalistic rule, with bit n set for n neighbors
+     */
+    public int getBirthCounts() {
+        return this.birthCounts;
+    }
+
+    /**
+     * getSurvivalCounts returns the counts of neighbors a living cell
+     * survives with in a totalistic rule, with bit n set for n neighbors
+     */
+    public int getSurvivalCounts() {
+        return this.survivalCounts;
+    }
+
+    /**
+     * toString returns the rulestring of the rule in B/S notation
+     */
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Rule && Arrays.equals(this.table, ((Rule) o).table);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.table);
+    }
+
+    /**
+     * parseConfigurations parses the birth or survival part of a rulestring
+     * into the set of ring configurations it applies to
+     */
+    private static boolean[] parseConfigurations(String part, String rulestring) {
+        boolean[] configurations = new boolean[256];
+        int i = 0;
+        while (i < part.length()) {
+            char c = part.charAt(i++);
+            if (c < '0' || c > '8') {
+                throw new IllegalArgumentException("Expected a count of neighbors at '" + c + "' in '" + rulestring + "'");
+            }
+            int count = c - '0';
+
+            boolean exclude = i < part.length() && part.charAt(i) == '-';
+            if (exclude) {
+                i++;
+            }
+            int start = i;
+            while (i < part.length() && LETTERS.indexOf(part.charAt(i)) >= 0) {
+                i++;
+            }
+            String letters = part.substring(start, i);
+            if (exclude && letters.isEmpty()) {
+                throw new IllegalArgumentException("Expected letters after '" + count + "-' in '" + rulestring + "'");
+            }
+
+            for (int ring = 0; ring < 256; ring++) {
+                if (Integer.bitCount(ring) != count) {
+                    continue;
+                }
+                if (letters.isEmpty() || letters.indexOf(LETTER_OF[ring]) >= 0 != exclude) {
+                    configurations[ring] = true;
+                }
+            }
+
+            for (char letter : letters.toCharArray()) {
+                if (!hasLetter(count, letter)) {
+                    throw new IllegalArgumentException("No configuration '" + count + letter + "' in '" + rulestring + "'");
+                }
+            }
+        }
+        return configurations;
+    }
+
+    /**
+     * describe returns the birth or survival part of the rulestring, with
+     * letters only for the counts that are not totalistic
+     */
+    private String describe(boolean alive) {
+        StringBuilder description = new StringBuilder();
+        for (int count = 0; count <= 8; count++) {
+            StringBuilder included = new StringBuilder();
+            StringBuilder excluded = new StringBuilder();
+            for (char letter : LETTERS.toCharArray()) {
+                if (!hasLetter(count, letter)) {
+                    continue;
+                }
+                boolean applies = false;
+                for (int ring = 0; ring < 256; ring++) {
+                    if (Integer.bitCount(ring) == count && LETTER_OF[ring] == letter) {
+                        applies = this.table[index(ring, alive)];
+                        break;
+                    }
+                }
+                (applies ? included : excluded).append(letter);
+            }
+
+            if (count == 0 || count == 8) {
+                if (this.table[index((1 << count) - 1, alive)]) {
+                    description.append(count);
+                }
+            } else if (excluded.length() == 0) {
+                description.append(count);
+            } else if (included.length() > 0) {
+                description.append(count);
+                description.append(included.length() <= excluded.length() ? included : "-" + excluded);
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * hasLetter tells whether a Hensel letter names configurations of a count
+     * of neighbors
+     */
+    private static boolean hasLetter(int count, char letter) {
+        for (int ring = 0; ring < 256; ring++) {
+            if (Integer.bitCount(ring) == count && LETTER_OF[ring] == letter) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * index returns the neighborhood index of a ring configuration around a
+     * dead or living cell
+     */
+    private static int index(int ring, boolean alive) {
+        int index = alive ? CENTER : 0;
+        for (int r = 0; r < 8; r++) {
+            if ((ring & (1 << r)) != 0) {
+                index |= RING[r];
+            }
+        }
+        return index;
+    }
+
+    /**
+     * henselLetters assigns each ring configuration the letter of the
+     * representative it is a rotation or reflection of
+     */
+    private static char[] henselLetters() {
+        char[] letters = new char[256];
+        for (String representative : REPRESENTATIVES) {
+            int count = representative.charAt(0) - '0';
+            char letter = representative.charAt(1);
+            int ring = 0;
+            for (char position : representative.substring(2).toCharArray()) {
+                ring |= 1 << (position - '0');
+            }
+
+            for (int rotation = 0; rotation < 4; rotation++) {
+                for (int configuration : new int[] { ring, reflect(ring) }) {
+                    letters[configuration] = letter;
+                    if (count < 4) {
+                        letters[~configuration & 0xff] = letter;
+                    }
+                }
+                ring = rotate(ring);
+            }
+        }
+        return letters;
+    }
+
+    /**
+     * rotate turns a ring configuration a quarter turn clockwise
+     */
+    private static int rotate(int ring) {
+        return ((ring << 2) | (ring >>> 6)) & 0xff;
+    }
+
+    /**
+     * reflect mirrors a ring configuration left to right
+     */
+    private static int reflect(int ring) {
+        int reflected = 0;
+        for (int r = 0; r < 8; r++) {
+            if ((ring & (1 << r)) != 0) {
+                reflected |= 1 << ((8 - r) % 8);
+            }
+        }
+        return reflected;
+    }
+}
@@ -0,0 +1,319 @@
+package session;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import engine.PackedRows;
+import grid.Checkpoint;
+import rule.Rule;
+
+/**
+ * SessionFile saves a checkpoint of a grid to a binary session file and
+ * reads it back. The file holds, in little-endian order:
+ *
+ * - a header: MAGIC, VERSION, height, width, generation, wrap, the length of
+ * the rule and the rule
+ * - the living cells as bit-packed rows, PackedRows.words(width) longs per
+ * row
+ * - the age plane, the age of each living cell, and the mrg plane, the
+ * afterlife of each cell (see encodeMrg). Each plane is a sequence of
+ * varints compressed with Deflater, preceded by the number of values, its
+ * length and its compressed length.
+ *
+ * Ages and afterlives are small numbers, mostly a single byte as varints,
+ * and cells that have never lived are a run of zeros, so the planes take a
+ * fraction of the memory of the grid.
+ */
+public final class SessionFile {
+
+    private static final long MAGIC = 0x535345534546494cL; // "LIFESESS"
+    private static final int VERSION = 1;
+
+    /**
+     * CHUNK_SIZE is the number of bytes written at a time
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private SessionFile() {
+    }
+
+    /**
+     * write saves a checkpoint to a session file. The file is written next
+     * to its destination and moved into place once complete, so an existing
+     * session is never left half written.
+     */
+    public static void write(Checkpoint checkpoint, Path file) throws IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            byte[] rule = checkpoint.getRule().toString().getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer header = ByteBuffer.allocate(32 + rule.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(checkpoint.getHeight())
+                    .putInt(checkpoint.getWidth())
+                    .putInt(checkpoint.getGeneration())
+                    .putInt(checkpoint.isWrap() ? 1 : 0)
+                    .putInt(rule.length)
+                    .put(rule)
+                    .flip();
+            writeFully(channel, header);
+
+            int words = PackedRows.words(checkpoint.getWidth());
+            ByteBuffer rows = ByteBuffer.allocate(CHUNK_SIZE * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            LongBuffer longs = rows.asLongBuffer();
+            for (long[] row : checkpoint.getCells()) {
+                if (longs.remaining() < words) {
+                    rows.limit(longs.position() * Long.BYTES);
+                    writeFully(channel, rows);
+                    rows.clear();
+                    longs.clear();
+                }
+                longs.put(row, 0, words);
+            }
+            rows.limit(longs.position() * Long.BYTES);
+            writeFully(channel, rows);
+
+            int[] ages = checkpoint.getAges();
+            Varints plane = new Varints(ages.length);
+            for (int age : ages) {
+                plane.add(zigzag(age));
+            }
+            writePlane(channel, plane);
+
+            int[] mrg = checkpoint.getMrg();
+            plane = new Varints(mrg.length);
+            for (int value : mrg) {
+                plane.add(encodeMrg(value, checkpoint.getGeneration()));
+            }
+            writePlane(channel, plane);
+
+            channel.force(false);
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * writePlane compresses the varints of a plane into the channel, after
+     * the number of values and the lengths
+     */
+    private static void writePlane(FileChannel channel, Varints plane) throws IOException {
+        long start = channel.position();
+        ByteBuffer lengths = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+        writeFully(channel, lengths.duplicate());
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(plane.bytes, 0, plane.size);
+            deflater.finish();
+            ByteBuffer output = ByteBuffer.allocate(CHUNK_SIZE);
+            while (!deflater.finished()) {
+                output.clear();
+                deflater.deflate(output);
+                output.flip();
+                writeFully(channel, output);
+            }
+
+            lengths.putInt(0, plane.count).putLong(4, plane.size).putLong(12, deflater.getBytesWritten());
+            channel.write(lengths, start);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * read reads a checkpoint from a session file, which is memory-mapped
+     * rather than read into the heap
+     *
+     * @throws IllegalArgumentException if the file is not a session file or
+     *                                  is corrupt
+     */
+    public static Checkpoint read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return read(mapped.order(ByteOrder.LITTLE_ENDIAN));
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException(file + " is truncated");
+            } catch (DataFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException(file + " is corrupt: " + e.getMessage());
+            }
+        }
+    }
+
+    private static Checkpoint read(ByteBuffer bytes) throws DataFormatException {
+        if (bytes.remaining() < Long.BYTES || bytes.getLong() != MAGIC) {
+            throw new IllegalArgumentException("Not a session file");
+        }
+        int version = bytes.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException(
+                    String.format("Session file has version %d, expected %d", version, VERSION));
+        }
+        int height = bytes.getInt();
+        int width = bytes.getInt();
+        int generation = bytes.getInt();
+        boolean wrap = bytes.getInt() != 0;
+        int ruleLength = bytes.getInt();
+        if (ruleLength < 0 || ruleLength > bytes.remaining()) {
+            throw new DataFormatException("invalid rule");
+        }
+        byte[] ruleName = new byte[ruleLength];
+        bytes.get(ruleName);
+        Rule rule = Rule.parse(new String(ruleName, StandardCharsets.US_ASCII));
+        if (height < 1 || width < 1 || (long) height * width > Integer.MAX_VALUE) {
+            throw new DataFormatException("invalid dimensions");
+        }
+
+        int words = PackedRows.words(width);
+        long[][] cells = new long[height][words];
+        LongBuffer longs = bytes.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        for (long[] row : cells) {
+            longs.get(row);
+        }
+        bytes.position(bytes.position() + height * words * Long.BYTES);
+
+        Varints plane = readPlane(bytes);
+        int[] ages = new int[plane.count];
+        int position = 0;
+        for (int i = 0; i < ages.length; i++) {
+            byte b = plane.bytes[position++];
+            int value = b & 0x7f;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = plane.bytes[position++];
+                value |= (b & 0x7f) << shift;
+            }
+            ages[i] = unzigzag(value);
+        }
+
+        plane = readPlane(bytes);
+        if (plane.count != height * width) {
+            throw new DataFormatException("mrg plane does not match the dimensions");
+        }
+        int[] mrg = new int[plane.count];
+        position = 0;
+        for (int i = 0; i < mrg.length; i++) {
+            byte b = plane.bytes[position++];
+            int value = b & 0x7f;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = plane.bytes[position++];
+                value |= (b & 0x7f) << shift;
+            }
+            mrg[i] = decodeMrg(value, generation);
+        }
+
+        try {
+            return new Checkpoint(height, width, generation, wrap, rule, cells, ages, mrg);
+        } catch (IllegalArgumentException e) {
+            throw new DataFormatException(e.getMessage());
+        }
+    }
+
+    /**
+     * readPlane decompresses the varints of a plane written by writePlane
+     */
+    private static Varints readPlane(ByteBuffer bytes) throws DataFormatException {
+        int count = bytes.getInt();
+        long size = bytes.getLong();
+        long length = bytes.getLong();
+        if (count < 0 || size < count || size > Integer.MAX_VALUE || length < 0 || length > bytes.remaining()) {
+            throw new DataFormatException("invalid plane lengths");
+        }
+        ByteBuffer input = bytes.slice().limit((int) length);
+        bytes.position(bytes.position() + (int) length);
+
+        Varints plane = new Varints(new byte[(int) size], count);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            int inflated = 0;
+            while (inflated < size) {
+                int read = inflater.inflate(plane.bytes, inflated, (int) size - inflated);
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("plane ends early");
+                }
+                inflated += read;
+            }
+        } finally {
+            inflater.end();
+        }
+        return plane;
+    }
+
+    /**
+     * encodeMrg turns the mrg of a cell into an unsigned number that is small
+     * for recent deaths: 0 if the cell has never lived, and 1 plus the
+     * zigzag encoded afterlife of the cell otherwise
+     */
+    private static int encodeMrg(int mrg, int generation) {
+        return mrg == -1 ? 0 : zigzag(generation - 1 - mrg) + 1;
+    }
+
+    private static int decodeMrg(int value, int generation) {
+        return value == 0 ? -1 : generation - 1 - unzigzag(value - 1);
+    }
+
+    /**
+     * zigzag maps signed numbers to unsigned ones so that numbers close to 0
+     * stay small: 0, -1, 1, -2 become 0, 1, 2, 3
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Varints is a sequence of count unsigned LEB128 varints, held in the
+     * first size bytes
+     */
+    private static final class Varints {
+        private byte[] bytes;
+        private int size;
+        private int count;
+
+        Varints(int count) {
+            this.bytes = new byte[Math.max(16, count + count / 4)];
+        }
+
+        Varints(byte[] bytes, int count) {
+            this.bytes = bytes;
+            this.size = bytes.length;
+            this.count = count;
+        }
+
+        void add(int value) {
+            if (this.size + 5 > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+            }
+            while ((value & ~0x7f) != 0) {
+                this.bytes[this.size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            this.bytes[this.size++] = (byte) value;
+            this.count++;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package simulation;
+
+/**
+ * Command is a message to the simulation thread, e.g. to evolve a single
+ * generation or to clear the grid. Commands are applied between generations
+ * in the order they were sent (see Simulation.send), so they never race with
+ * the evolution of the grid.
+ */
+public class Command {
+
+    enum Kind {
+        STEP,
+        REWIND,
+        PLAY_PAUSE,
+        PAUSE,
+        SPEED,
+        CLEAR,
+        WRAP,
+        AUTO_PAUSE,
+        EDIT,
+        QUERY,
+    }
+
+    private final String name;
+    final Kind kind;
+
+    /**
+     * interval is the time between generations in milliseconds of a SPEED
+     * command
+     */
+    final int interval;
+
+    /**
+     * generation is the generation a REWIND command goes back to, -1 for the
+     * generation before the current one
+     */
+    final int generation;
+
+    /**
+     * edit is the change to the grid of an EDIT command, or the reading of
+     * the grid of a QUERY command
+     */
+    final Runnable edit;
+
+    private Command(String name, Kind kind, int interval, Runnable edit) {
+        this(name, kind, interval, -1, edit);
+    }
+
+    private Command(String name, Kind kind, int interval, int generation, Runnable edit) {
+        this.name = name;
+        this.kind = kind;
+        this.interval = interval;
+        this.generation = generation;
+        this.edit = edit;
+    }
+
+    /**
+     * step evolves the grid by a single generation, or pauses the simulation
+     * instead if it is running
+     */
+    public static Command step() {
+        return new Command("step", Kind.STEP, 0, null);
+    }
+
+    /**
+     * stepBack goes back to the previous generation, or pauses the simulation
+     * instead if it is running
+     */
+    public static Command stepBack() {
+        return new Command("step back", Kind.REWIND, 0, -1, null);
+    }
+
+    /**
+     * rewind goes back to an earlier generation, or pauses the simulation
+     * instead if it is running. Only the recent generations since the last
+     * edit of the grid can be gone back to.
+     */
+    public static Command rewind(int generation) {
+        return new Command("rewind to " + generation, Kind.REWIND, 0, generation, null);
+    }
+
+    /**
+     * playPause starts the simulation if it is paused and pauses it
+     * otherwise
+     */
+    public static Command playPause() {
+        return new Command("play/pause", Kind.PLAY_PAUSE, 0, null);
+    }
+
+    /**
+     * pause pauses the simulation if it is running
+     */
+    public static Command pause() {
+        return new Command("pause", Kind.PAUSE, 0, null);
+    }
+
+    /**
+     * speed sets the target time between generations
+     *
+     * @param interval The time in milliseconds, 0 to evolve as fast as
+     *                 possible
+     */
+    public static Command speed(int interval) {
+        return new Command("speed " + interval + "ms", Kind.SPEED, interval, null);
+    }
+
+    /**
+     * clear sets every cell of the grid to dead, or pauses the simulation
+     * instead if it is running
+     */
+    public static Command clear() {
+        return new Command("clear", Kind.CLEAR, 0, null);
+    }
+
+    /**
+     * wrap toggles whether cells wrap around the edges of the grid
+     */
+    public static Command wrap() {
+        return new Command("wrap", Kind.WRAP, 0, null);
+    }
+
+    /**
+     * autoPause toggles whether the simulation pauses once the grid settles
+     * into a still life or an oscillator
+     */
+    public static Command autoPause() {
+        return new Command("auto-pause", Kind.AUTO_PAUSE, 0, null);
+    }
+
+    /**
+     * edit changes the grid in any other way, e.g. to toggle a cell or load a
+     * pattern
+     *
+     * @param name The name of the edit, for the logs
+     * @param edit The change, run on the simulation thread
+     */
+    public static Command edit(String name, Runnable edit) {
+        return new Command(name, Kind.EDIT, 0, edit);
+    }
+
+    /**
+     * query reads the grid without changing it, e.g. to save it
+     *
+     * @param name  The name of the query, for the logs
+     * @param query The reading, run on the simulation thread between two
+     *              generations
+     */
+    public static Command query(String name, Runnable query) {
+        return new Command(name, Kind.QUERY, 0, query);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+}
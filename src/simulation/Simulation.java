@@ -0,0 +1,341 @@
+package simulation;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import grid.ChangeSet;
+import grid.Grid;
+import grid.PeriodDetector;
+import grid.Timeline;
+
+/**
+ * Simulation evolves a grid on its own thread, either as fast as possible or
+ * with a target interval between generations. Only the simulation thread
+ * touches the grid: it is controlled by commands sent to its mailbox, which
+ * are applied between generations, and the display reads snapshots of the
+ * grid that are published through a single atomic reference.
+ *
+ * Snapshots are recycled between the simulation and the display (triple
+ * buffering): the simulation writes a snapshot it owns, publishes it in
+ * place of the previous one, and takes back a published snapshot the
+ * display has not taken yet. A snapshot taken by the display is handed back
+ * with release once the display has moved on. A recycled snapshot is brought
+ * up to date from the changes of the generations it missed, or redrawn from
+ * the grid if they are no longer known.
+ */
+public class Simulation {
+
+    /**
+     * MAX_HISTORY is the number of changed cells, as a fraction of the cells
+     * of the grid, that are remembered to bring recycled snapshots up to date
+     */
+    private static final double MAX_HISTORY = 0.25;
+
+    private final Grid grid;
+    private final Thread thread;
+
+    /**
+     * mailbox holds the commands sent to the simulation thread
+     */
+    private final ConcurrentLinkedQueue<Command> mailbox = new ConcurrentLinkedQueue<Command>();
+
+    /**
+     * running is set while the grid is evolved automatically, and interval is
+     * the target time between generations in nanoseconds, 0 to evolve as fast
+     * as possible. Only used by the simulation thread.
+     */
+    private boolean running = false;
+    private long interval;
+
+    /**
+     * latest is the newest published snapshot, null once the display took it.
+     * free is a snapshot the display released for reuse.
+     */
+    private final AtomicReference<Snapshot> latest = new AtomicReference<Snapshot>();
+    private final AtomicReference<Snapshot> free = new AtomicReference<Snapshot>();
+
+    /**
+     * history holds the changes of the generations after historyStart, and
+     * historySize their number of changed cells. epoch counts the edits of
+     * the grid: changes before an edit cannot bring a snapshot up to date.
+     * Only used by the simulation thread.
+     */
+    private final ArrayDeque<ChangeSet> history = new ArrayDeque<ChangeSet>();
+    private int historySize = 0;
+    private int historyStart;
+    private int epoch = 0;
+
+    /**
+     * timeline remembers the recent generations, so that the grid can be
+     * rewound. Only used by the simulation thread.
+     */
+    private final Timeline timeline = new Timeline(Timeline.DEFAULT_CAPACITY);
+
+    /**
+     * periods detects when the grid settles into a period, and autoPause is
+     * set to pause the simulation when it does. Only used by the simulation
+     * thread.
+     */
+    private final PeriodDetector periods = new PeriodDetector();
+    private boolean autoPause = false;
+
+    /**
+     * @param grid     The grid to evolve. Once the simulation is started, the
+     *                 grid must only be modified by commands.
+     * @param interval The target time between generations in milliseconds, 0
+     *                 to evolve as fast as possible
+     */
+    public Simulation(Grid grid, int interval) {
+        this.grid = grid;
+        this.historyStart = grid.getGeneration();
+        this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+
+        this.thread = new Thread(this::loop, "Evolution-Thread");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * start starts the simulation thread and publishes the first snapshot.
+     * The grid is not evolved until setRunning is called.
+     */
+    public void start() {
+        this.thread.start();
+    }
+
+    /**
+     * stop stops the simulation thread after the current generation
+     */
+    public void stop() {
+        this.thread.interrupt();
+    }
+
+    /**
+     * send sends a command to the simulation thread. It is applied before the
+     * next generation, after the commands sent before it.
+     */
+    public void send(Command command) {
+        this.mailbox.add(command);
+        LockSupport.unpark(this.thread);
+    }
+
+    /**
+     * takeSnapshot returns the newest snapshot of the grid, or null if there
+     * is none since the last call. The snapshot is not modified until it is
+     * released.
+     */
+    public Snapshot takeSnapshot() {
+        return this.latest.getAndSet(null);
+    }
+
+    /**
+     * release hands a snapshot returned by takeSnapshot back to the
+     * simulation, once it is no longer read
+     */
+    public void release(Snapshot snapshot) {
+        this.free.compareAndSet(null, snapshot);
+    }
+
+    /**
+     * loop applies the commands and evolves the grid until the thread is
+     * stopped.
+     * Evolution falls behind instead of bursting when a generation takes
+     * longer than the interval.
+     */
+    private void loop() {
+        publish();
+
+        long next = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            if (!this.mailbox.isEmpty()) {
+                Command command;
+                while ((command = this.mailbox.poll()) != null) {
+                    Command applied = command;
+                    run(applied.getName(), () -> apply(applied));
+                }
+                publish();
+            }
+
+            if (!this.running) {
+                LockSupport.park(this);
+                next = System.nanoTime();
+                continue;
+            }
+
+            long interval = this.interval;
+            if (interval > 0) {
+                long now = System.nanoTime();
+                if (now < next) {
+                    // Commands wake the thread early
+                    LockSupport.parkNanos(this, Math.min(next - now, interval));
+                    continue;
+                }
+                next = Math.max(next, now - interval) + interval;
+            }
+            run("evolve", this::evolve);
+            publish();
+        }
+    }
+
+    /**
+     * run runs work on the simulation thread, reporting any error instead of
+     * letting it stop the thread. Running out of memory, e.g. while loading
+     * a huge pattern, is reported the same way, as the memory of the failed
+     * work is freed once it is abandoned.
+     *
+     * @param name What the work is, for the report
+     */
+    private void run(String name, Runnable work) {
+        try {
+            work.run();
+        } catch (RuntimeException | OutOfMemoryError | StackOverflowError e) {
+            System.err.printf("%s failed: %s\n", name, e);
+            this.edited();
+        }
+    }
+
+    /**
+     * apply applies a command
+     */
+    private void apply(Command command) {
+        switch (command.kind) {
+            case STEP:
+                if (this.running) {
+                    this.running = false;
+                } else {
+                    evolve();
+                }
+                break;
+            case REWIND:
+                if (this.running) {
+                    this.running = false;
+                } else {
+                    rewind(command.generation < 0 ? this.grid.getGeneration() - 1 : command.generation);
+                }
+                break;
+            case PLAY_PAUSE:
+                this.running = !this.running;
+                break;
+            case PAUSE:
+                this.running = false;
+                break;
+            case SPEED:
+                this.interval = TimeUnit.MILLISECONDS.toNanos(command.interval);
+                break;
+            case CLEAR:
+                if (this.running) {
+                    this.running = false;
+                } else {
+                    this.grid.clearGrid();
+                    edited();
+                }
+                break;
+            case WRAP:
+                this.grid.setWrap(!this.grid.isWrap());
+                // States seen before evolved without or with wrap
+                this.periods.clear();
+                break;
+            case AUTO_PAUSE:
+                this.autoPause = !this.autoPause;
+                break;
+            case EDIT:
+                command.edit.run();
+                edited();
+                break;
+            case QUERY:
+                command.edit.run();
+                break;
+        }
+    }
+
+    /**
+     * evolve evolves the grid by a generation, remembers its changes and
+     * checks whether it settled into a period
+     */
+    private void evolve() {
+        this.timeline.prepare(this.grid);
+        this.grid.evolve();
+        this.timeline.record(this.grid);
+        ChangeSet changes = this.grid.getChanges();
+
+        int settled = this.periods.getPeriod();
+        int period = this.periods.check(this.grid);
+        if (period != 0 && settled == 0) {
+            System.out.printf("Generation %d is %s\n", this.grid.getGeneration(), PeriodDetector.describe(period));
+            if (this.autoPause && this.running) {
+                this.running = false;
+            }
+        }
+
+        this.history.add(changes);
+        this.historySize += changes.size() + 1;
+        while (this.historySize > this.grid.getHeight() * this.grid.getWidth() * MAX_HISTORY) {
+            ChangeSet forgotten = this.history.remove();
+            this.historySize -= forgotten.size() + 1;
+            this.historyStart = forgotten.getGeneration();
+        }
+    }
+
+    /**
+     * rewind puts the grid back to a generation remembered by the timeline
+     */
+    private void rewind(int generation) {
+        if (generation > this.grid.getGeneration()) {
+            System.err.printf("Can only go back from generation %d\n", this.grid.getGeneration());
+            return;
+        }
+        long start = System.nanoTime();
+        if (!this.timeline.rewind(this.grid, generation)) {
+            int oldest = this.timeline.getStart();
+            System.err.printf("Can only go back to generation %d\n",
+                    oldest < 0 ? this.grid.getGeneration() : oldest);
+            return;
+        }
+        forget();
+        System.out.printf("Rewound to generation %d in %.3fms\n", generation, (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * edited forgets the history and the timeline after the grid was changed
+     * other than by evolving it
+     */
+    private void edited() {
+        this.timeline.clear();
+        forget();
+    }
+
+    /**
+     * forget forgets the history, so that every snapshot is redrawn from the
+     * grid, and the states seen before
+     */
+    private void forget() {
+        this.periods.clear();
+        this.epoch++;
+        this.history.clear();
+        this.historySize = 0;
+        this.historyStart = this.grid.getGeneration();
+    }
+
+    /**
+     * publish brings a snapshot the display does not hold up to date with
+     * the grid and publishes it
+     */
+    private void publish() {
+        Snapshot snapshot = this.latest.getAndSet(null);
+        if (snapshot == null) {
+            snapshot = this.free.getAndSet(null);
+        }
+        if (snapshot == null) {
+            snapshot = new Snapshot(this.grid.getHeight(), this.grid.getWidth());
+            snapshot.fill(this.grid, this.epoch);
+        } else if (snapshot.getEpoch() != this.epoch || snapshot.getGeneration() < this.historyStart) {
+            snapshot.fill(this.grid, this.epoch);
+        } else {
+            snapshot.update(this.grid, this.history);
+        }
+        snapshot.setState(this.running, this.grid.isWrap(), this.autoPause, this.periods.getPeriod());
+        this.latest.set(snapshot);
+    }
+}
@@ -0,0 +1,211 @@
+package simulation;
+
+import java.util.Arrays;
+
+import grid.ChangeSet;
+import grid.Grid;
+import grid.IntList;
+
+/**
+ * Snapshot is the appearance of every cell of a grid at one generation, and
+ * the state of the simulation, as published by the simulation for the
+ * display. A snapshot is only written by the simulation thread before it is
+ * published, so the display can read it without locking and never sees a
+ * generation half drawn.
+ */
+public class Snapshot {
+
+    /**
+     * NEVER_ALIVE is the shade of a cell that has never been alive
+     */
+    public static final byte NEVER_ALIVE = 0;
+
+    /**
+     * ALIVE is the shade of a living cell
+     */
+    public static final byte ALIVE = 1;
+
+    /**
+     * DEAD is the shade of a dead cell in the first afterlife bucket of the
+     * Grid. The shade of a cell in bucket b is DEAD + b.
+     */
+    public static final byte DEAD = 2;
+
+    /**
+     * SHADES is the number of shades a cell can have
+     */
+    public static final int SHADES = DEAD + Grid.AFTERLIFE_BUCKETS;
+
+    private final int height;
+    private final int width;
+
+    /**
+     * shades holds the shade of the cell at (y, x) at index y * width + x
+     */
+    private final byte[] shades;
+
+    private int generation;
+    private boolean running;
+    private boolean wrap;
+    private boolean autoPause;
+
+    /**
+     * period is the period the grid settled into, 0 if none was detected
+     * (see PeriodDetector)
+     */
+    private int period;
+
+    /**
+     * epoch is the number of edits of the grid the snapshot includes (see
+     * Simulation)
+     */
+    private int epoch;
+
+    Snapshot(int height, int width) {
+        this.height = height;
+        this.width = width;
+        this.shades = new byte[height * width];
+    }
+
+    /**
+     * of returns a snapshot of the current generation of a grid
+     */
+    public static Snapshot of(Grid grid) {
+        Snapshot snapshot = new Snapshot(grid.getHeight(), grid.getWidth());
+        snapshot.fill(grid, 0);
+        snapshot.setState(false, grid.isWrap(), false, 0);
+        return snapshot;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return The generation of the grid the snapshot was taken at
+     */
+    public int getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * @return Whether the grid was being evolved automatically
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * @return Whether cells wrapped around the edges of the grid
+     */
+    public boolean isWrap() {
+        return this.wrap;
+    }
+
+    /**
+     * @return Whether the simulation pauses once the grid settles into a
+     *         period
+     */
+    public boolean isAutoPause() {
+        return this.autoPause;
+    }
+
+    /**
+     * @return The period the grid settled into, 1 if it is stable and 0 if
+     *         no period was detected
+     */
+    public int getPeriod() {
+        return this.period;
+    }
+
+    void setState(boolean running, boolean wrap, boolean autoPause, int period) {
+        this.running = running;
+        this.wrap = wrap;
+        this.autoPause = autoPause;
+        this.period = period;
+    }
+
+    int getEpoch() {
+        return this.epoch;
+    }
+
+    /**
+     * getShade returns the shade of the cell at a coordinate: NEVER_ALIVE,
+     * ALIVE or DEAD plus its afterlife bucket
+     */
+    public byte getShade(int y, int x) {
+        return this.shades[y * this.width + x];
+    }
+
+    /**
+     * mismatch returns the first column in [from, to) of row y whose shade
+     * differs between this snapshot and another of the same size, or -1 if
+     * there is none
+     */
+    public int mismatch(Snapshot other, int y, int from, int to) {
+        int row = y * this.width;
+        int offset = Arrays.mismatch(this.shades, row + from, row + to, other.shades, row + from, row + to);
+        return offset < 0 ? -1 : from + offset;
+    }
+
+    /**
+     * fill sets the shade of every cell from the grid
+     */
+    void fill(Grid grid, int epoch) {
+        for (int y = 0; y < this.height; y++) {
+            for (int x = 0; x < this.width; x++) {
+                this.shades[y * this.width + x] = shadeOf(grid, y, x);
+            }
+        }
+        this.generation = grid.getGeneration();
+        this.epoch = epoch;
+    }
+
+    /**
+     * update brings the snapshot up to date with the grid, given the changes
+     * of at least every generation since the snapshot was taken. Only the
+     * cells listed by the changes are read from the grid.
+     */
+    void update(Grid grid, Iterable<ChangeSet> changes) {
+        for (ChangeSet changed : changes) {
+            if (changed.getGeneration() > this.generation) {
+                update(grid, changed.getBirths());
+                update(grid, changed.getDeaths());
+                update(grid, changed.getFades());
+            }
+        }
+        this.generation = grid.getGeneration();
+    }
+
+    /**
+     * update sets the shade of the cells with the given indices from the grid
+     */
+    private void update(Grid grid, IntList indices) {
+        for (int k = 0; k < indices.size(); k++) {
+            int index = indices.get(k);
+            this.shades[index] = shadeOf(grid, index / this.width, index % this.width);
+        }
+    }
+
+    /**
+     * shadeOf gets the shade of a cell of a grid. The afterlife of a dead
+     * cell is measured from the generation the grid was in when the cell
+     * died, one before the current generation. See Grid.AFTERLIFE_INTERVAL.
+     */
+    private static byte shadeOf(Grid grid, int y, int x) {
+        if (grid.isAlive(y, x)) {
+            return ALIVE;
+        }
+        int mrg = grid.getMrg(y, x);
+        if (mrg == -1) {
+            return NEVER_ALIVE;
+        }
+        int afterlife = grid.getGeneration() - 1 - mrg;
+        int bucket = Math.max(0, Math.min(afterlife / Grid.AFTERLIFE_INTERVAL, Grid.AFTERLIFE_BUCKETS - 1));
+        return (byte) (DEAD + bucket);
+    }
+}
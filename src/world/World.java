@@ -0,0 +1,579 @@
+package world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import engine.PackedRows;
+import engine.SwarEngine;
+import rule.Rule;
+
+/**
+ * World is a bit-packed board stored outside of the Java heap, for boards
+ * far larger than a Grid can hold, e.g. 100k x 100k cells. It only holds the
+ * state of each cell (no ages or afterlife), so it needs a single bit per
+ * cell, and the garbage collector never scans or moves it. The cells live
+ * either in direct memory or in a memory-mapped world file (see create and
+ * open), which persists the board between runs.
+ *
+ * The cells are laid out in tiles of TILE_ROWS rows of TILE_WORDS words, 4 KB
+ * each, so that every tile is a page of memory (or of the file). Tiles
+ * without living cells are tracked and never read, and tiles that stay empty
+ * are never written, so only the pages around living cells are touched. A
+ * generation is computed in place: the rows are streamed through a window of
+ * three rows on the heap, evolved with the swar kernel and written back, so
+ * the heap used does not depend on the height of the board.
+ *
+ * Direct memory is limited by -XX:MaxDirectMemorySize, which is the maximum
+ * heap size unless set. Mapped files are not.
+ */
+public class World implements AutoCloseable {
+
+    /**
+     * TILE_ROWS is the height of a tile in number of cells, and TILE_WORDS
+     * its width in number of words, i.e. TILE_WORDS * 64 cells
+     */
+    public static final int TILE_ROWS = 64;
+    public static final int TILE_WORDS = 8;
+
+    private static final int TILE_LONGS = TILE_ROWS * TILE_WORDS;
+    private static final int TILE_BYTES = TILE_LONGS * Long.BYTES;
+
+    /**
+     * The header of a world file holds the state of the world before the
+     * occupancy of each tile, one byte per tile, and is padded to a whole
+     * number of tiles so that the tiles that follow are page aligned
+     */
+    private static final long MAGIC = 0x444c524f5746494cL; // "LIFWORLD"
+    private static final int VERSION = 1;
+    private static final int RULE_OFFSET = 28;
+    private static final int OCCUPANCY_OFFSET = 256;
+    private static final int MAX_RULE_LENGTH = OCCUPANCY_OFFSET - RULE_OFFSET;
+
+    private final int height;
+    private final int width;
+
+    /**
+     * words is the number of words holding a row, tilesAcross the number of
+     * tiles holding a band of TILE_ROWS rows and bands the number of bands
+     */
+    private final int words;
+    private final int tilesAcross;
+    private final int bands;
+
+    /**
+     * chunks holds the tiles, bandsPerChunk bands per buffer. A buffer holds
+     * at most 2 GB.
+     */
+    private LongBuffer[] chunks;
+    private final int bandsPerChunk;
+
+    /**
+     * occupied tells, for each tile, whether it may hold living cells. A tile
+     * that is not occupied holds only dead cells. next is the occupancy of
+     * the generation being computed by evolve.
+     */
+    private boolean[] occupied;
+    private boolean[] next;
+
+    /**
+     * header and mapped are the mapped header and chunks of a world file,
+     * null for a world in direct memory
+     */
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] mapped;
+
+    private int generation = 0;
+    private boolean wrap = false;
+    private Rule rule = Rule.CONWAY;
+
+    /**
+     * The rows evolve reads and writes, kept to avoid allocating them for
+     * every generation
+     */
+    private final long[] above;
+    private final long[] row;
+    private final long[] below;
+    private final long[] first;
+    private final long[] out;
+
+    /**
+     * World creates an empty board in direct memory
+     *
+     * @param height The height of the board in number of cells
+     * @param width  The width of the board in number of cells
+     * @throws OutOfMemoryError if there is not enough direct memory
+     */
+    public World(int height, int width) {
+        this(height, width, null, null);
+    }
+
+    /**
+     * @param channel The world file to map the tiles from, null to allocate
+     *                them in direct memory
+     * @param header  The mapped header of the world file
+     */
+    private World(int height, int width, FileChannel channel, MappedByteBuffer header) {
+        if (height < 1 || width < 1) {
+            throw new IllegalArgumentException("World dimensions must be positive");
+        }
+        this.height = height;
+        this.width = width;
+        this.words = PackedRows.words(width);
+        this.tilesAcross = (this.words + TILE_WORDS - 1) / TILE_WORDS;
+        this.bands = (height + TILE_ROWS - 1) / TILE_ROWS;
+
+        long bandBytes = (long) this.tilesAcross * TILE_BYTES;
+        if (bandBytes > Integer.MAX_VALUE - TILE_BYTES) {
+            throw new IllegalArgumentException("World is too wide: " + width);
+        }
+        this.bandsPerChunk = (int) Math.min(this.bands, (Integer.MAX_VALUE - TILE_BYTES) / bandBytes);
+        this.chunks = new LongBuffer[(this.bands + this.bandsPerChunk - 1) / this.bandsPerChunk];
+        this.header = header;
+        this.mapped = channel != null ? new MappedByteBuffer[this.chunks.length] : null;
+        for (int i = 0; i < this.chunks.length; i++) {
+            int size = (int) (Math.min(this.bandsPerChunk, this.bands - i * this.bandsPerChunk) * bandBytes);
+            ByteBuffer bytes;
+            if (channel == null) {
+                // Direct buffers are zeroed, i.e. every cell is dead
+                bytes = ByteBuffer.allocateDirect(size + TILE_BYTES).alignedSlice(TILE_BYTES);
+            } else {
+                long position = header.capacity() + i * this.bandsPerChunk * bandBytes;
+                try {
+                    this.mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not map the world file", e);
+                }
+                bytes = this.mapped[i];
+            }
+            this.chunks[i] = bytes.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        }
+
+        this.occupied = new boolean[this.bands * this.tilesAcross];
+        this.next = new boolean[this.occupied.length];
+
+        this.above = new long[this.words];
+        this.row = new long[this.words];
+        this.below = new long[this.words];
+        this.first = new long[this.words];
+        this.out = new long[this.words];
+    }
+
+    /**
+     * create creates a world file holding an empty board and maps it. The
+     * file is as large as the board, but only the pages that are written
+     * take space on file systems that support sparse files.
+     *
+     * @throws java.nio.file.FileAlreadyExistsException if the file exists
+     */
+    public static World create(Path file, int height, int width) throws IOException {
+        if (height < 1 || width < 1) {
+            throw new IllegalArgumentException("World dimensions must be positive");
+        }
+        int tiles = tiles(height, width);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerBytes(tiles));
+            World world = new World(height, width, channel, header);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(0, MAGIC);
+            header.putInt(8, VERSION);
+            header.putInt(12, height);
+            header.putInt(16, width);
+            world.checkpoint();
+            return world;
+        }
+    }
+
+    /**
+     * open maps a world file written by create, at the generation of its
+     * last checkpoint. Only the header and the occupancy of the tiles are
+     * read, the tiles are paged in when they are used.
+     *
+     * @throws IllegalArgumentException if the file is not a world file
+     */
+    public static World open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < OCCUPANCY_OFFSET) {
+                throw new IllegalArgumentException(file + " is not a world file");
+            }
+            ByteBuffer start = ByteBuffer.allocate(OCCUPANCY_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(start, 0);
+            if (start.getLong(0) != MAGIC) {
+                throw new IllegalArgumentException(file + " is not a world file");
+            }
+            if (start.getInt(8) != VERSION) {
+                throw new IllegalArgumentException(
+                        String.format("%s has version %d, expected %d", file, start.getInt(8), VERSION));
+            }
+            int height = start.getInt(12);
+            int width = start.getInt(16);
+            int tiles = tiles(height, width);
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerBytes(tiles));
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            World world = new World(height, width, channel, header);
+            world.generation = header.getInt(20);
+            world.wrap = header.get(24) != 0;
+            byte[] rule = new byte[header.getShort(26)];
+            header.get(RULE_OFFSET, rule);
+            world.rule = Rule.parse(new String(rule, StandardCharsets.US_ASCII));
+            if (header.get(25) == 0) {
+                // Tiles may have been written after the occupancy was
+                System.err.printf("%s was not closed cleanly, some cells may be a generation ahead of %d\n", file,
+                        world.generation);
+                world.scanOccupancy();
+            } else {
+                for (int i = 0; i < tiles; i++) {
+                    world.occupied[i] = header.get(OCCUPANCY_OFFSET + i) != 0;
+                }
+            }
+            return world;
+        }
+    }
+
+    /**
+     * tiles returns the number of tiles of a board
+     */
+    private static int tiles(int height, int width) {
+        return ((height + TILE_ROWS - 1) / TILE_ROWS) * ((PackedRows.words(width) + TILE_WORDS - 1) / TILE_WORDS);
+    }
+
+    /**
+     * headerBytes returns the size of the header of a world file with the
+     * given number of tiles
+     */
+    private static int headerBytes(int tiles) {
+        long bytes = (long) OCCUPANCY_OFFSET + tiles;
+        return (int) ((bytes + TILE_BYTES - 1) / TILE_BYTES * TILE_BYTES);
+    }
+
+    /**
+     * @return The height of the board in number of cells
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * @return The width of the board in number of cells
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getGeneration() {
+        return this.generation;
+    }
+
+    public boolean isWrap() {
+        return this.wrap;
+    }
+
+    public void setWrap(boolean wrap) {
+        this.wrap = wrap;
+    }
+
+    public Rule getRule() {
+        return this.rule;
+    }
+
+    public void setRule(Rule rule) {
+        if (rule.toString().length() > MAX_RULE_LENGTH) {
+            throw new IllegalArgumentException("Rule is too long for a world file: " + rule);
+        }
+        this.rule = rule;
+    }
+
+    /**
+     * isMapped returns whether the world is stored in a world file
+     */
+    public boolean isMapped() {
+        return this.header != null;
+    }
+
+    /**
+     * isAlive gets the living state of the cell at a coordinate
+     */
+    public boolean isAlive(int y, int x) {
+        int i = x >>> 6;
+        return this.occupied[tile(y, i)] && (chunk(y).get(index(y, i)) & (1L << x)) != 0;
+    }
+
+    /**
+     * setAlive sets the living state of the cell at a coordinate
+     */
+    public void setAlive(int y, int x, boolean state) {
+        int i = x >>> 6;
+        LongBuffer chunk = chunk(y);
+        int index = index(y, i);
+        long word = chunk.get(index);
+        chunk.put(index, state ? word | (1L << x) : word & ~(1L << x));
+        this.occupied[tile(y, i)] |= state;
+    }
+
+    /**
+     * readRow copies row y of the board into a packed row
+     */
+    public void readRow(int y, long[] row) {
+        LongBuffer chunk = chunk(y);
+        for (int t = 0; t < this.tilesAcross; t++) {
+            int from = t * TILE_WORDS;
+            int length = Math.min(TILE_WORDS, this.words - from);
+            if (this.occupied[tile(y, from)]) {
+                chunk.get(index(y, from), row, from, length);
+            } else {
+                Arrays.fill(row, from, from + length, 0L);
+            }
+        }
+    }
+
+    /**
+     * writeRow copies a packed row into row y of the board. Bits past the
+     * width of the board must be 0.
+     */
+    public void writeRow(int y, long[] row) {
+        writeRow(y, row, this.occupied);
+    }
+
+    /**
+     * writeRow copies a packed row into row y of the board, skipping the
+     * tiles that were and stay empty, and marks the tiles it writes living
+     * cells to as occupied
+     *
+     * @param occupied The occupancy to update
+     */
+    private void writeRow(int y, long[] row, boolean[] occupied) {
+        LongBuffer chunk = chunk(y);
+        for (int t = 0; t < this.tilesAcross; t++) {
+            int from = t * TILE_WORDS;
+            int to = Math.min(from + TILE_WORDS, this.words);
+            long any = 0;
+            for (int i = from; i < to; i++) {
+                any |= row[i];
+            }
+            int tile = tile(y, from);
+            if (any != 0 || this.occupied[tile]) {
+                chunk.put(index(y, from), row, from, to - from);
+                occupied[tile] |= any != 0;
+            }
+        }
+    }
+
+    /**
+     * stamp sets the living cells of a pattern to alive, with the top left
+     * of the pattern at a coordinate of the board. Cells that fall outside
+     * of the board are dropped.
+     *
+     * @param rows   The packed rows of the pattern (see PackedRows), rows
+     *               without living cells may be null
+     * @param height The height of the pattern
+     */
+    public void stamp(long[][] rows, int height, int top, int left) {
+        long[] shifted = new long[this.words];
+        int bottom = (int) Math.min(this.height, (long) top + height);
+        for (int y = Math.max(0, top); y < bottom; y++) {
+            if (rows[y - top] == null) {
+                continue;
+            }
+            PackedRows.shift(rows[y - top], left, shifted, this.width);
+            readRow(y, this.row);
+            for (int i = 0; i < this.words; i++) {
+                this.row[i] |= shifted[i];
+            }
+            writeRow(y, this.row);
+        }
+    }
+
+    /**
+     * getPopulation returns the number of living cells on the board
+     */
+    public long getPopulation() {
+        long population = 0;
+        for (int y = 0; y < this.height; y++) {
+            if (!bandOccupied(y / TILE_ROWS)) {
+                y += TILE_ROWS - 1 - y % TILE_ROWS;
+                continue;
+            }
+            readRow(y, this.row);
+            for (long word : this.row) {
+                population += Long.bitCount(word);
+            }
+        }
+        return population;
+    }
+
+    /**
+     * evolve computes the next generation in place, a row at a time. Bands
+     * of rows that are empty and only have empty neighbors are skipped.
+     */
+    public void evolve() {
+        if (this.header != null && this.header.get(25) != 0) {
+            // The file holds a mix of two generations until the next
+            // checkpoint
+            this.header.put(25, (byte) 0);
+        }
+
+        // Each row is read before the row above it is written back, and the
+        // first row is kept for the last one to wrap around to
+        readRow(0, this.first);
+        long[] above = this.above;
+        long[] row = this.row;
+        long[] below = this.below;
+        boolean windowed = false;
+        for (int y = 0; y < this.height; y++) {
+            int band = y / TILE_ROWS;
+            if (y % TILE_ROWS == 0 && !bandActive(band)) {
+                // Skip the band, it stays empty
+                y += TILE_ROWS - 1;
+                windowed = false;
+                continue;
+            }
+            if (!windowed) {
+                // The row above is the old one: either from an empty band
+                // that was skipped, or the last row wrapped around
+                if (y > 0 || !this.wrap) {
+                    Arrays.fill(above, 0L);
+                } else {
+                    readRow(this.height - 1, above);
+                }
+                if (y == 0) {
+                    System.arraycopy(this.first, 0, row, 0, this.words);
+                } else {
+                    readRow(y, row);
+                }
+                windowed = true;
+            }
+
+            if (y < this.height - 1) {
+                readRow(y + 1, below);
+            } else if (this.wrap) {
+                System.arraycopy(this.first, 0, below, 0, this.words);
+            } else {
+                Arrays.fill(below, 0L);
+            }
+            SwarEngine.stepRow(above, row, below, this.out, this.width, this.wrap, this.rule);
+            writeRow(y, this.out, this.next);
+
+            long[] swap = above;
+            above = row;
+            row = below;
+            below = swap;
+        }
+
+        boolean[] swap = this.occupied;
+        this.occupied = this.next;
+        this.next = swap;
+        Arrays.fill(this.next, false);
+        this.generation++;
+        if (this.header != null) {
+            // Kept up to date for a process that stops without a
+            // checkpoint, the pages are written back by the OS
+            this.header.putInt(20, this.generation);
+        }
+    }
+
+    /**
+     * checkpoint writes the state of the world and every changed tile to the
+     * world file, so that it can be opened again at the current generation.
+     * Does nothing for a world in direct memory.
+     */
+    public void checkpoint() {
+        if (this.header == null) {
+            return;
+        }
+        for (MappedByteBuffer chunk : this.mapped) {
+            chunk.force();
+        }
+        // The header is written last, so the file is only marked clean once
+        // every tile is on disk
+        byte[] rule = this.rule.toString().getBytes(StandardCharsets.US_ASCII);
+        this.header.putInt(20, this.generation);
+        this.header.put(24, (byte) (this.wrap ? 1 : 0));
+        this.header.putShort(26, (short) rule.length);
+        this.header.put(RULE_OFFSET, rule);
+        for (int i = 0; i < this.occupied.length; i++) {
+            this.header.put(OCCUPANCY_OFFSET + i, (byte) (this.occupied[i] ? 1 : 0));
+        }
+        this.header.put(25, (byte) 1);
+        this.header.force();
+    }
+
+    /**
+     * close releases the board, after a checkpoint for a world file. The
+     * memory is freed once the buffers are collected, as Java 17 has no way
+     * to free it explicitly.
+     */
+    @Override
+    public void close() {
+        checkpoint();
+        this.chunks = null;
+    }
+
+    /**
+     * scanOccupancy finds the occupied tiles by reading every tile
+     */
+    private void scanOccupancy() {
+        for (int band = 0; band < this.bands; band++) {
+            LongBuffer chunk = this.chunks[band / this.bandsPerChunk];
+            int start = (band % this.bandsPerChunk) * this.tilesAcross * TILE_LONGS;
+            for (int t = 0; t < this.tilesAcross; t++) {
+                boolean any = false;
+                for (int k = 0; k < TILE_LONGS && !any; k++) {
+                    any = chunk.get(start + t * TILE_LONGS + k) != 0;
+                }
+                this.occupied[band * this.tilesAcross + t] = any;
+            }
+        }
+    }
+
+    /**
+     * bandActive returns whether a band of rows may change in the next
+     * generation, i.e. if it or a band next to it holds living cells
+     */
+    private boolean bandActive(int band) {
+        if (bandOccupied(band)) {
+            return true;
+        }
+        if (band > 0 ? bandOccupied(band - 1) : this.wrap && bandOccupied(this.bands - 1)) {
+            return true;
+        }
+        return band < this.bands - 1 ? bandOccupied(band + 1) : this.wrap && bandOccupied(0);
+    }
+
+    private boolean bandOccupied(int band) {
+        for (int t = band * this.tilesAcross; t < (band + 1) * this.tilesAcross; t++) {
+            if (this.occupied[t]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private LongBuffer chunk(int y) {
+        return this.chunks[y / TILE_ROWS / this.bandsPerChunk];
+    }
+
+    /**
+     * tile returns the tile holding word i of row y
+     */
+    private int tile(int y, int i) {
+        return (y / TILE_ROWS) * this.tilesAcross + i / TILE_WORDS;
+    }
+
+    /**
+     * index returns the index of word i of row y in its chunk
+     */
+    private int index(int y, int i) {
+        int band = (y / TILE_ROWS) % this.bandsPerChunk;
+        return (band * this.tilesAcross + i / TILE_WORDS) * TILE_LONGS + (y % TILE_ROWS) * TILE_WORDS
+                + i % TILE_WORDS;
+    }
+}